@@ -4,29 +4,38 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class UnbufferedStorageService implements IStorageService {
 
     private final String storageDir;
-    private final Map<Integer, String> memoryMap = new ConcurrentHashMap<>();
+    private final Set<Integer> ids = ConcurrentHashMap.newKeySet();
+    private final MessageCache cache;
 
     public UnbufferedStorageService(int port) {
+        this(port, new StorageConfig());
+    }
+
+    public UnbufferedStorageService(int port, StorageConfig config) {
         this.storageDir = "messages_" + port;
+        this.cache = new MessageCache(config.getLong("CACHE_MAX_BYTES", 64L * 1024 * 1024));
         File dir = new File(storageDir);
         if (!dir.exists()) dir.mkdir();
-        loadFromDiskToMemory();
+        loadIdsFromDisk();
     }
 
     @Override
     public void put(int id, String message) {
-        memoryMap.put(id, message);
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        cache.put(id, bytes);
+        ids.add(id);
 
         File file = new File(storageDir + File.separator + id + ".msg");
 
         try (FileOutputStream fos = new FileOutputStream(file, false)) {
-            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
             fos.write(bytes);  
         } catch (IOException e) {
             System.err.println("Yazma hatası (ID " + id + "): " + e.getMessage());
@@ -35,15 +44,17 @@ public class UnbufferedStorageService implements IStorageService {
 
     @Override
     public String get(int id) {
-        if (memoryMap.containsKey(id)) return memoryMap.get(id);
+        byte[] cached = cache.get(id);
+        if (cached != null) return new String(cached, StandardCharsets.UTF_8);
+        if (!ids.contains(id)) return null;
 
         File file = new File(storageDir + File.separator + id + ".msg");
-        if (!file.exists()) return null;
 
         try (FileInputStream fis = new FileInputStream(file)) {
             byte[] data = fis.readAllBytes();
             String result = new String(data, StandardCharsets.UTF_8).trim();
-            memoryMap.put(id, result); 
+            // cache'te de diskten okunan (trim edilmiş) değer tutulur
+            cache.put(id, result.getBytes(StandardCharsets.UTF_8));
             return result;
         } catch (IOException e) {
             System.err.println("Okuma hatası (ID " + id + "): " + e.getMessage());
@@ -52,10 +63,17 @@ public class UnbufferedStorageService implements IStorageService {
     }
     @Override
     public int getCount() {
-        return memoryMap.size();
+        return ids.size();
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        cache.stats(stats);
+        return stats;
     }
 
-    private void loadFromDiskToMemory() {
+    private void loadIdsFromDisk() {
         File dir = new File(storageDir);
         if (!dir.exists() || !dir.isDirectory()) return;
 
@@ -64,10 +82,7 @@ public class UnbufferedStorageService implements IStorageService {
 
         for (File file : files) {
             try {
-                int id = Integer.parseInt(file.getName().replace(".msg", ""));
-                byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
-                String content = new String(bytes, StandardCharsets.UTF_8).trim();
-                memoryMap.put(id, content);
+                ids.add(Integer.parseInt(file.getName().replace(".msg", "")));
             } catch (Exception ignored) {}
         }
     }
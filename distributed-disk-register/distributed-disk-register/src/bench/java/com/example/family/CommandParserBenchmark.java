@@ -0,0 +1,84 @@
+package com.example.family;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Gateway'de bir satırın komuta çevrilip payload'ın replikasyona (ByteString) hazır hale gelme maliyeti:
+//  split -> eski yol: UTF-8 String, trim, split(" ", 3), toUpperCase, parseInt, copyFromUtf8
+//  bytes -> TextCommand: satır baytları üzerinde çözüm, payload dilimi unsafeWrap ile sarılır
+// Satırlar yarı SET yarı GET. Ayırma farkı için: -prof gc (gc.alloc.rate.norm)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParserBenchmark {
+
+    private static final int LINES = 1024;
+
+    @Param({"16", "256", "4096"})
+    public int payloadSize;
+
+    private byte[][] lines;
+    private ByteBuffer[] buffers;
+    private final TextCommand command = new TextCommand();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        String payload = "ğ".repeat(payloadSize / 4) + "x".repeat(payloadSize - 2 * (payloadSize / 4));
+        lines = new byte[LINES][];
+        buffers = new ByteBuffer[LINES];
+        for (int i = 0; i < LINES; i++) {
+            int id = random.nextInt(10_000_000);
+            String line = i % 2 == 0 ? "SET " + id + " " + payload : "get " + id;
+            lines[i] = line.getBytes(StandardCharsets.UTF_8);
+            buffers[i] = ByteBuffer.wrap(lines[i]);
+        }
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        byte[] line = lines[next++ & (LINES - 1)];
+        String text = new String(line, StandardCharsets.UTF_8).trim();
+        String[] parts = text.split(" ", 3);
+        String commandType = parts[0].toUpperCase();
+        int id = Integer.parseInt(parts[1]);
+        blackhole.consume(id);
+        if (commandType.equals("SET")) {
+            blackhole.consume(ByteString.copyFromUtf8(parts[2]));
+        } else {
+            blackhole.consume(commandType.equals("GET"));
+        }
+    }
+
+    @Benchmark
+    public void bytes(Blackhole blackhole) {
+        TextCommand parsed = command.parse(buffers[next++ & (LINES - 1)]);
+        blackhole.consume(parsed.id());
+        if (parsed.type() == TextCommand.SET) {
+            blackhole.consume(UnsafeByteOperations.unsafeWrap(parsed.payload()));
+        } else {
+            blackhole.consume(parsed.type() == TextCommand.GET);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.family;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cache kapalıyken (her okuma miss) GET maliyeti:
+//  buffered         -> BufferedStorageService: mesaj başına .msg dosyası
+//  segmented-pread  -> segment log, FileChannel.read
+//  segmented-mmap   -> segment log, kapalı segmentler MappedByteBuffer'dan
+//  lsm              -> memtable + sıralı run dosyaları (sparse index ile tek blok okuma)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadPathBenchmark {
+
+    private static final int PORT = 47001;
+    private static final int MESSAGES = 20_000;
+
+    @Param({"buffered", "segmented-pread", "segmented-mmap", "lsm", "paged"})
+    public String engine;
+
+    @Param({"128", "2048"})
+    public int messageSize;
+
+    private IStorageService storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        deleteStorageDirs();
+        StorageConfig config = new StorageConfig()
+                .set("CACHE_MAX_BYTES", 0)
+                .set("SEGMENT_MAX_BYTES", 4 * 1024 * 1024)
+                .set("SNAPSHOT_INTERVAL_SECONDS", 0)
+                .set("COMPACTION_INTERVAL_SECONDS", 0)
+                // veri memtable'dan küçük olursa lsm satırı run okumasını değil skip list aramasını ölçer
+                .set("MEMTABLE_MAX_BYTES", 256 * 1024)
+                .set("READ_MMAP", engine.equals("segmented-mmap"));
+        switch (engine) {
+            case "buffered":
+                storage = new BufferedStorageService(PORT, config);
+                break;
+            case "lsm":
+                storage = new LsmStorageService(PORT, config);
+                break;
+            case "paged":
+                storage = new PagedStorageService(PORT, config);
+                break;
+            default:
+                storage = new SegmentedLogStorageService(PORT, config);
+        }
+
+        String payload = "ç".repeat(messageSize / 4) + "x".repeat(messageSize - 2 * (messageSize / 4));
+        for (int id = 0; id < MESSAGES; id++) {
+            storage.put(id, payload + id);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteStorageDirs();
+    }
+
+    @Benchmark
+    public String get() {
+        return storage.get(ThreadLocalRandom.current().nextInt(MESSAGES));
+    }
+
+    private static void deleteStorageDirs() throws IOException {
+        for (String dir : new String[]{"messages_" + PORT, "segments_" + PORT, "lsm_" + PORT, "pages_" + PORT}) {
+            Path path = Paths.get(dir);
+            if (!Files.exists(path)) continue;
+            try (Stream<Path> files = Files.walk(path)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.family;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Yazma ağırlıklı yükte SET maliyeti (rastgele id'ler, aynı id'lerin üzerine yazma dahil):
+//  buffered  -> mesaj başına .msg dosyası (aç/yaz/kapat)
+//  segmented -> append-only segment log + hash index
+//  lsm       -> WAL + memtable, arka planda sıralı run'lara flush ve birleştirme
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class WritePathBenchmark {
+
+    private static final int PORT = 47002;
+    private static final int ID_SPACE = 1_000_000;
+
+    @Param({"buffered", "segmented", "lsm", "paged"})
+    public String engine;
+
+    @Param({"128", "1024"})
+    public int messageSize;
+
+    private IStorageService storage;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        deleteStorageDirs();
+        StorageConfig config = new StorageConfig()
+                .set("SNAPSHOT_INTERVAL_SECONDS", 0)
+                .set("COMPACTION_INTERVAL_SECONDS", 0)
+                .set("MEMTABLE_MAX_BYTES", 8 * 1024 * 1024);
+        switch (engine) {
+            case "buffered":
+                storage = new BufferedStorageService(PORT, config);
+                break;
+            case "lsm":
+                storage = new LsmStorageService(PORT, config);
+                break;
+            case "paged":
+                storage = new PagedStorageService(PORT, config);
+                break;
+            default:
+                storage = new SegmentedLogStorageService(PORT, config);
+        }
+        payload = "ş".repeat(messageSize / 2).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteStorageDirs();
+    }
+
+    @Benchmark
+    public void put() {
+        storage.putBytes(ThreadLocalRandom.current().nextInt(ID_SPACE), ByteBuffer.wrap(payload));
+    }
+
+    private static void deleteStorageDirs() throws IOException {
+        for (String dir : new String[]{"messages_" + PORT, "segments_" + PORT, "lsm_" + PORT, "pages_" + PORT}) {
+            Path path = Paths.get(dir);
+            if (!Files.exists(path)) continue;
+            try (Stream<Path> files = Files.walk(path)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.family;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// IStorageService'i kendine ait bir I/O havuzunda çalıştırır; gRPC thread'leri disk beklemez.
+// Havuzun boyutu (IO_THREADS) aynı anda diske giden istek sayısını sınırlar.
+public class AsyncStorageService {
+
+    private final IStorageService storage;
+    private final ExecutorService ioExecutor;
+
+    public AsyncStorageService(IStorageService storage, int ioThreads, String name) {
+        this.storage = storage;
+        AtomicInteger counter = new AtomicInteger();
+        this.ioExecutor = Executors.newFixedThreadPool(Math.max(1, ioThreads), r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public CompletableFuture<Void> putBytes(int id, ByteBuffer payload) {
+        return CompletableFuture.runAsync(() -> storage.putBytes(id, payload), ioExecutor);
+    }
+
+    // bulunamazsa future null ile tamamlanır
+    public CompletableFuture<ByteBuffer> getBytes(int id) {
+        return CompletableFuture.supplyAsync(() -> storage.getBytes(id), ioExecutor);
+    }
+
+    public CompletableFuture<Void> putAll(Map<Integer, ByteBuffer> messages) {
+        return CompletableFuture.runAsync(() -> storage.putAll(messages), ioExecutor);
+    }
+
+    public CompletableFuture<Map<Integer, ByteBuffer>> getAll(int[] ids) {
+        return CompletableFuture.supplyAsync(() -> storage.getAll(ids), ioExecutor);
+    }
+
+    public CompletableFuture<Map<Integer, ByteBuffer>> scan(int fromId, int toId, int limit) {
+        return CompletableFuture.supplyAsync(() -> storage.scan(fromId, toId, limit), ioExecutor);
+    }
+
+    public void shutdown() {
+        ioExecutor.shutdown();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.family;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// int id'ler için Bloom filtresi: "yok" cevabı kesin, "olabilir" cevabı fpp olasılıkla yanlış.
+// Olmayan id'ler için segment/run dosyasına hiç dokunmadan cevap verilir.
+final class BloomFilter {
+
+    private static final int MAGIC = 0x424C4F4D; // "BLOM"
+
+    private final long[] words;
+    private final long numBits;
+    private final int hashes;
+
+    private BloomFilter(long[] words, int hashes) {
+        this.words = words;
+        this.numBits = (long) words.length * Long.SIZE;
+        this.hashes = hashes;
+    }
+
+    static BloomFilter create(int expectedInsertions, double fpp) {
+        int n = Math.max(1, expectedInsertions);
+        double p = Math.min(0.5, Math.max(1e-6, fpp));
+        long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, (bits + Long.SIZE - 1) / Long.SIZE));
+        int hashes = (int) Math.max(1, Math.min(16, Math.round((double) wordCount * Long.SIZE / n * Math.log(2))));
+        return new BloomFilter(new long[wordCount], hashes);
+    }
+
+    void add(int key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            long bit = bitIndex(h1 + i * h2);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(int key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            long bit = bitIndex(h1 + i * h2);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    long sizeBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    // [hashes:int][words:int][long * words]
+    int serializedSize() {
+        return 2 * Integer.BYTES + words.length * Long.BYTES;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashes);
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    static BloomFilter readFrom(ByteBuffer in) throws IOException {
+        int hashes = in.getInt();
+        int wordCount = in.getInt();
+        if (hashes <= 0 || wordCount <= 0 || wordCount > in.remaining() / Long.BYTES) {
+            throw new IOException("Bloom filtresi bozuk");
+        }
+        long[] words = new long[wordCount];
+        in.asLongBuffer().get(words);
+        in.position(in.position() + wordCount * Long.BYTES);
+        return new BloomFilter(words, hashes);
+    }
+
+    // Segmentlerin yanındaki .bloom dosyası: [magic][filtre][crc32c]
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            writeTo(out);
+            out.flush();
+            out.writeInt((int) crc.getValue());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // dosya yoksa veya bozuksa null; çağıran filtre yokmuş gibi davranır
+    static BloomFilter load(Path file) {
+        if (!Files.exists(file)) return null;
+        CRC32C crc = new CRC32C();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc);
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC) return null;
+            int hashes = in.readInt();
+            int wordCount = in.readInt();
+            if (hashes <= 0 || wordCount <= 0 || (long) wordCount * Long.BYTES > Files.size(file)) return null;
+            long[] words = new long[wordCount];
+            for (int i = 0; i < wordCount; i++) {
+                words[i] = in.readLong();
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                System.err.println("Bloom dosyası checksum hatalı, yok sayılıyor: " + file);
+                return null;
+            }
+            return new BloomFilter(words, hashes);
+        } catch (IOException e) {
+            System.err.println("Bloom dosyası okunamadı (" + e.getMessage() + "): " + file);
+            return null;
+        }
+    }
+
+    private long bitIndex(int combined) {
+        return (combined & Integer.MAX_VALUE) % numBits;
+    }
+
+    // murmur3 fmix64; ardışık id'ler de bitlere dağılır
+    private static long mix(int key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e2ab6c53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,93 +1,197 @@
 package com.example.family;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BufferedStorageService implements IStorageService {
 
     private final String storageDir;
-    private final Map<Integer, String> memoryMap = new ConcurrentHashMap<>();
+    // diskteki id'ler (sıralı, aralık taraması için); içerik değil sadece anahtarlar bellekte tutulur
+    private final NavigableSet<Integer> ids = new ConcurrentSkipListSet<>();
+    // skip list'in size()'ı tüm listeyi dolaşır; sayı ayrıca tutulur
+    private final AtomicInteger idCount = new AtomicInteger();
+    private final MessageCache cache;
+    private final ValueCodec codec;
+    private final boolean lazyRecovery;
+    // id listesi tamamen yüklenene kadar false; bu sürede ids'te olmayan id'ler diskte aranır
+    private volatile boolean idsLoaded;
+    // lazy recovery ilerlemesi: dizindeki mesaj dosyası sayısı ve listelenenler
+    private volatile long idFilesTotal;
+    private final AtomicLong idFilesListed = new AtomicLong();
 
     public BufferedStorageService(int port) {
+        this(port, new StorageConfig());
+    }
+
+    public BufferedStorageService(int port, StorageConfig config) {
 
         this.storageDir = "messages_" + port;
+        this.cache = MessageCache.fromConfig(config);
+        this.lazyRecovery = "lazy".equalsIgnoreCase(config.getString("RECOVERY", "eager"));
         File dir = new File(storageDir);
         if (!dir.exists()) {
             dir.mkdir();
-        } loadFromDiskToMemory(); 
+        }
+        this.codec = new ValueCodec(dir.toPath(), config);
+        if (!lazyRecovery) {
+            loadIdsFromDisk();
+        }
+    }
+
+    @Override
+    public void startRecovery() {
+        if (!lazyRecovery || idsLoaded) return;
+        Thread loader = new Thread(this::loadIdsFromDisk, "Recovery-" + storageDir);
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Override
+    public int getRecoveryPercent() {
+        if (idsLoaded) return 100;
+        long total = idFilesTotal;
+        if (total <= 0) return 0;
+        // scan aynı anda listeleme yapabilir; bitene kadar 100 gösterilmez
+        return (int) Math.min(99, idFilesListed.get() * 100 / total);
     }
 
         @Override
         public int getCount() {
-            return memoryMap.size();
+            return idCount.get();
         }
 
         @Override
         public void put(int id, String message) {
-            memoryMap.put(id, message);
-
-            File file = new File(storageDir + File.separator + id + ".msg");
-
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8))) {
-                writer.write(message);
-            } catch (IOException e) {
-                System.err.println("Yazma hatası: " + e.getMessage());
-            }
+            byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+            cache.put(id, payload);
+            addId(id);
+            writeFile(id, ByteBuffer.wrap(payload));
         }
 
     @Override
     public String get(int id) {
-        if (memoryMap.containsKey(id)) {
-            return memoryMap.get(id);
+        byte[] cached = cache.get(id);
+        if (cached != null) {
+            return new String(cached, StandardCharsets.UTF_8);
         }
+        byte[] content = readFile(id);
+        if (content == null) {
+            return null;
+        }
+        cache.put(id, content);
+        return new String(content, StandardCharsets.UTF_8);
+    }
 
-        File file = new File(storageDir + File.separator + id + ".msg");
+    @Override
+    public void putBytes(int id, ByteBuffer payload) {
+        cache.invalidate(id);
+        addId(id);
+        writeFile(id, payload.duplicate());
+    }
 
-        if (!file.exists()) {
+    @Override
+    public ByteBuffer getBytes(int id) {
+        byte[] cached = cache.get(id);
+        if (cached != null) {
+            return ByteBuffer.wrap(cached).asReadOnlyBuffer();
+        }
+        byte[] content = readFile(id);
+        if (content == null) {
             return null;
         }
+        cache.put(id, content);
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
 
-        StringBuilder builder = new StringBuilder();
+    @Override
+    public Map<Integer, ByteBuffer> scan(int fromId, int toId, int limit) {
+        // lazy recovery bitmemişse id listesi eksik olabilir; dizin burada okunur
+        if (!idsLoaded) loadIdsFromDisk();
+        Map<Integer, ByteBuffer> result = new LinkedHashMap<>();
+        for (int id : ids.subSet(fromId, true, toId, true)) {
+            if (result.size() >= limit) break;
+            ByteBuffer payload = getBytes(id);
+            if (payload != null) result.put(id, payload);
+        }
+        return result;
+    }
 
-        try (BufferedReader reader =
-                     new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+    private Path messageFile(int id) {
+        return Paths.get(storageDir, id + ".msg");
+    }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                builder.append(line);
-                builder.append("\n");
+    // payload'ın arkasına crc32c trailer'ı eklenir (MessageFile)
+    private void writeFile(int id, ByteBuffer payload) {
+        ByteBuffer content = codec.encode(payload);
+        ByteBuffer[] buffers = {content, MessageFile.trailer(content)};
+        try (FileChannel channel = FileChannel.open(messageFile(id), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
             }
-        }catch (IOException e) {
-        System.err.printf("Okuma hatası (ID %d): %s%n", id, e.getMessage());
-        return null; 
+        } catch (IOException e) {
+            System.err.println("Yazma hatası: " + e.getMessage());
+        }
+    }
+
+    // Dosya olduğu gibi okunur; satır satır okuyup trim etmek baş/sondaki boşlukları ve
+    // satır sonlarını değiştiriyordu. Checksum tutmayan (bozuk) dosya bulunamadı sayılır.
+    private byte[] readFile(int id) {
+        if (!ids.contains(id) && idsLoaded) {
+            return null;
+        }
+        Path file = messageFile(id);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            byte[] content = codec.decode(MessageFile.decode(Files.readAllBytes(file)));
+            addId(id);
+            return content;
+        } catch (IOException e) {
+            System.err.printf("Okuma hatası (ID %d): %s%n", id, e.getMessage());
+            return null;
         }
-        String result = builder.toString().trim();
+    }
 
-        memoryMap.put(id, result);
+    private void addId(int id) {
+        if (ids.add(id)) idCount.incrementAndGet();
+    }
 
-        return result;
+    @Override
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        codec.stats(stats);
+        cache.stats(stats);
+        return stats;
     }
-    private void loadFromDiskToMemory() {
-        File dir = new File(storageDir);
-        if (dir.exists() && dir.isDirectory()) {
-            File[] files = dir.listFiles((d, name) -> name.endsWith(".msg"));
-            if (files != null) {
-                for (File file : files) {
-                    try {
-                        int id = Integer.parseInt(file.getName().replace(".msg", ""));
-                        byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
-                        String content = new String(bytes, StandardCharsets.UTF_8).trim();
-                        memoryMap.put(id, content);
-                    } catch (Exception ignored) {}
-                }
-            }
+
+    // açılışta dosya içerikleri okunmaz, sadece isimlerden id'ler çıkarılır. Lazy recovery'de önce
+    // dosyalar sayılır ki getRecoveryPercent ilerlemeyi gösterebilsin.
+    private void loadIdsFromDisk() {
+        try {
+            Path dir = Paths.get(storageDir);
+            if (lazyRecovery) idFilesTotal = LegacyMessageLoader.countIds(dir);
+            LegacyMessageLoader.listIds(dir, id -> {
+                addId(id);
+                idFilesListed.incrementAndGet();
+            });
+        } catch (IOException e) {
+            System.err.println("Mesaj dizini okunamadı: " + e.getMessage());
         }
+        idsLoaded = true;
     }
 }
\ No newline at end of file
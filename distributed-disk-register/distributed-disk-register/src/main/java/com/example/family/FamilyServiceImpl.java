@@ -5,19 +5,35 @@ import family.FamilyServiceGrpc;
 import family.FamilyView;
 import family.NodeInfo;
 import family.ChatMessage;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import family.CountResponse;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FamilyServiceImpl extends FamilyServiceGrpc.FamilyServiceImplBase {
 
+    // Scan her seferde bu kadar mesaj okur; istemci yavaşsa sonraki parça okunmaz
+    private static final int SCAN_BATCH = 256;
+
     private final NodeRegistry registry;
     private final NodeInfo self;
     private final IStorageService storageService;
+    // Store/Retrieve disk işleri bu havuzda çalışır; gRPC thread'i future tamamlanınca cevap verir
+    private final AsyncStorageService asyncStorage;
 
-    public FamilyServiceImpl(NodeRegistry registry, NodeInfo self, IStorageService storageService) {
+    public FamilyServiceImpl(NodeRegistry registry, NodeInfo self, IStorageService storageService,
+                             AsyncStorageService asyncStorage) {
         this.registry = registry;
         this.self = self;
         this.storageService = storageService;
+        this.asyncStorage = asyncStorage;
         this.registry.add(self);
     }
 
@@ -25,42 +41,202 @@ public class FamilyServiceImpl extends FamilyServiceGrpc.FamilyServiceImplBase {
     public void store(family.StoredMessage request, io.grpc.stub.StreamObserver<family.StoreResult> responseObserver) {
 
         System.out.println(" [gRPC] liderden KAYIT emri geldi! ID: " + request.getId());
-        //diske yazma işlemini yapın 
-        storageService.put(request.getId(), request.getText());
-
-        family.StoreResult result = family.StoreResult.newBuilder()
-                .setSuccess(true) 
-                .build();
-                
-        responseObserver.onNext(result);
-        responseObserver.onCompleted();
+        //diske yazma işlemi I/O havuzunda yapılır, cevap yazma bitince gönderilir
+        asyncStorage.putBytes(request.getId(), payload(request)).whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Kayıt başarısız (ID " + request.getId() + "): " + cause(error).getMessage());
+            }
+            responseObserver.onNext(storeResult(error));
+            responseObserver.onCompleted();
+        });
     }
 
     // retrieve metodu (gRPC)
     @Override
     public void retrieve(family.MessageId request, io.grpc.stub.StreamObserver<family.StoredMessage> responseObserver) {
-        String message = storageService.get(request.getId());
-
-        family.StoredMessage response;
-        
-        if (message != null) {
-            response = family.StoredMessage.newBuilder()
-                    .setId(request.getId())
-                    .setText(message)
-                    .setFound(true)
-                    .build();
-        } else {
-            response = family.StoredMessage.newBuilder()
-                    .setId(request.getId())
-                    .setFound(false)
-                    .setText("")
+        asyncStorage.getBytes(request.getId()).whenComplete((message, error) -> {
+            if (error != null) {
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Okuma hatası (ID " + request.getId() + ")")
+                        .withCause(cause(error))
+                        .asRuntimeException());
+                return;
+            }
+
+            family.StoredMessage response;
+
+            if (message != null) {
+                response = setMessage(family.StoredMessage.newBuilder()
+                        .setId(request.getId())
+                        .setFound(true), message, request.getAcceptData())
+                        .build();
+            } else {
+                response = family.StoredMessage.newBuilder()
+                        .setId(request.getId())
+                        .setFound(false)
+                        .setText("")
+                        .build();
+            }
+
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+        });
+    }
+    
+    @Override
+    public void storeBatch(family.MessageBatch request, StreamObserver<family.StoreResult> responseObserver) {
+        System.out.println(" [gRPC] liderden TOPLU KAYIT emri geldi! Mesaj sayısı: " + request.getMessagesCount());
+        Map<Integer, ByteBuffer> messages = new LinkedHashMap<>();
+        for (family.StoredMessage message : request.getMessagesList()) {
+            messages.put(message.getId(), payload(message));
+        }
+        asyncStorage.putAll(messages).whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Toplu kayıt başarısız: " + cause(error).getMessage());
+            }
+            responseObserver.onNext(storeResult(error));
+            responseObserver.onCompleted();
+        });
+    }
+
+    @Override
+    public void retrieveBatch(family.MessageIdBatch request, StreamObserver<family.MessageBatch> responseObserver) {
+        int[] ids = new int[request.getIdsCount()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = request.getIds(i);
+        }
+        asyncStorage.getAll(ids).whenComplete((found, error) -> {
+            if (error != null) {
+                responseObserver.onError(Status.INTERNAL
+                        .withDescription("Toplu okuma hatası")
+                        .withCause(cause(error))
+                        .asRuntimeException());
+                return;
+            }
+
+            family.MessageBatch.Builder response = family.MessageBatch.newBuilder();
+            for (int id : ids) {
+                ByteBuffer message = found.get(id);
+                family.StoredMessage.Builder item = family.StoredMessage.newBuilder()
+                        .setId(id)
+                        .setFound(message != null);
+                if (message != null) {
+                    // aynı id birden fazla istendiyse buffer paylaşılır; wrap sadece okur
+                    setMessage(item, message.duplicate(), request.getAcceptData());
+                }
+                response.addMessages(item);
+            }
+
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        });
+    }
+
+    @Override
+    public void scan(family.ScanRequest request, StreamObserver<family.StoredMessage> responseObserver) {
+        int limit = request.getLimit() > 0 ? request.getLimit() : Integer.MAX_VALUE;
+        new ScanCursor((ServerCallStreamObserver<family.StoredMessage>) responseObserver,
+                request.getFromId(), request.getToId(), limit).start();
+    }
+
+    // Aralığı SCAN_BATCH'lik parçalar halinde I/O havuzunda okur. Bir parça ancak önceki gönderilmiş ve
+    // stream yazılabilir (isReady) ise okunur; bütün aralık belleğe alınmaz, yavaş istemci diski durdurur.
+    private final class ScanCursor {
+        private final ServerCallStreamObserver<family.StoredMessage> call;
+        private final int toId;
+        // aynı anda tek parça okunur; onReady ve parça bitişi yarışırsa biri çıkar
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private long nextId;
+        private long remaining;
+        private volatile boolean finished;
+
+        ScanCursor(ServerCallStreamObserver<family.StoredMessage> call, int fromId, int toId, int limit) {
+            this.call = call;
+            this.nextId = fromId;
+            this.toId = toId;
+            this.remaining = limit;
+        }
+
+        void start() {
+            call.setOnCancelHandler(() -> finished = true);
+            call.setOnReadyHandler(this::pump);
+            pump();
+        }
+
+        private void pump() {
+            if (finished || !call.isReady() || !busy.compareAndSet(false, true)) return;
+            if (nextId > toId || remaining == 0) {
+                finish();
+                return;
+            }
+            int batch = (int) Math.min(SCAN_BATCH, remaining);
+            asyncStorage.scan((int) nextId, toId, batch).whenComplete((found, error) -> {
+                if (finished) return;
+                if (error != null) {
+                    finished = true;
+                    call.onError(Status.INTERNAL
+                            .withDescription("Tarama hatası (ID " + nextId + "-" + toId + ")")
+                            .withCause(cause(error))
+                            .asRuntimeException());
+                    return;
+                }
+                if (found.isEmpty()) {
+                    finish();
+                    return;
+                }
+                for (Map.Entry<Integer, ByteBuffer> entry : found.entrySet()) {
+                    call.onNext(family.StoredMessage.newBuilder()
+                            .setId(entry.getKey())
+                            .setData(UnsafeByteOperations.unsafeWrap(entry.getValue()))
+                            .setFound(true)
+                            .build());
+                    nextId = entry.getKey() + 1L;
+                }
+                remaining -= found.size();
+                busy.set(false);
+                pump();
+            });
+        }
+
+        private void finish() {
+            finished = true;
+            call.onCompleted();
+        }
+    }
+
+    // getBytes'ın buffer'ı cache ile paylaşılsa da değiştirilmez; kopyalamadan sarılabilir. acceptData
+    // göndermeyen (data alanını bilmeyen) eski sürümlere mesaj baseline'daki gibi text alanında döner.
+    private static family.StoredMessage.Builder setMessage(family.StoredMessage.Builder builder, ByteBuffer message,
+                                                           boolean acceptData) {
+        if (acceptData) {
+            return builder.setData(UnsafeByteOperations.unsafeWrap(message));
+        }
+        return builder.setText(UnsafeByteOperations.unsafeWrap(message).toStringUtf8());
+    }
+
+    private static family.StoreResult storeResult(Throwable error) {
+        if (error == null) {
+            return family.StoreResult.newBuilder()
+                    .setSuccess(true)
                     .build();
         }
-        
-        responseObserver.onNext(response);
-        responseObserver.onCompleted();
+        return family.StoreResult.newBuilder()
+                .setSuccess(false)
+                .setMessage(String.valueOf(cause(error).getMessage()))
+                .build();
     }
-    
+
+    // future hataları CompletionException içinde gelir
+    private static Throwable cause(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // eski istemciler sadece text gönderir; getTextBytes UTF-8 byte'larını döner
+    private static ByteBuffer payload(family.StoredMessage message) {
+        ByteString payload = message.getData().isEmpty() ? message.getTextBytes() : message.getData();
+        return payload.asReadOnlyByteBuffer();
+    }
+
     @Override
     public void join(NodeInfo request, StreamObserver<FamilyView> responseObserver) {
         registry.add(request);
@@ -99,8 +275,11 @@ public class FamilyServiceImpl extends FamilyServiceGrpc.FamilyServiceImplBase {
     @Override
     public void getCount(Empty request, StreamObserver<CountResponse> responseObserver) {
         int currentCount = storageService.getCount();
+        int recoveryPercent = storageService.getRecoveryPercent();
         CountResponse response = CountResponse.newBuilder()
                 .setCount(currentCount)
+                .setRecovering(recoveryPercent < 100)
+                .setRecoveryPercent(recoveryPercent)
                 .build();
 
         responseObserver.onNext(response);
@@ -0,0 +1,23 @@
+package com.example.family;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Yeni oluşturulan ya da rename edilen dosyanın dizin girdisi ancak dizin fsync edilince kalıcıdır.
+// Windows dizini FileChannel ile açmaya izin vermez; orada adım atlanır (NTFS meta veriyi günlükler).
+final class FileSync {
+
+    private static final boolean WINDOWS = System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+
+    private FileSync() {
+    }
+
+    static void directory(Path dir) throws IOException {
+        if (WINDOWS) return;
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
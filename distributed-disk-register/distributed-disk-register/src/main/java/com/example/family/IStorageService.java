@@ -1,7 +1,68 @@
 package com.example.family;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public interface IStorageService {
     void put(int id, String message);
     String get(int id);
     int getCount();  
+
+    // Byte API: payload diskten RPC'ye String'e çevrilmeden taşınır.
+    // Varsayılanlar String metodlarına düşer; motorlar doğrudan byte ile çalışmak için override eder.
+    default void putBytes(int id, ByteBuffer payload) {
+        put(id, StandardCharsets.UTF_8.decode(payload.duplicate()).toString());
+    }
+
+    // bulunamazsa null; dönen buffer cache ile paylaşılabilir, salt okunur kabul edilmeli
+    default ByteBuffer getBytes(int id) {
+        String message = get(id);
+        return message == null ? null : ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Toplu yazma; varsayılan tek tek putBytes çağırır, motorlar tek sıralı yazma ile override eder.
+    // Aynı id birden fazla verilirse map'in sırasındaki son değer kalır.
+    default void putAll(Map<Integer, ByteBuffer> messages) {
+        for (Map.Entry<Integer, ByteBuffer> entry : messages.entrySet()) {
+            putBytes(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // Toplu okuma; sonuç istek sırasındadır, bulunamayan id'ler map'te yer almaz
+    default Map<Integer, ByteBuffer> getAll(int[] ids) {
+        Map<Integer, ByteBuffer> result = new LinkedHashMap<>();
+        for (int id : ids) {
+            ByteBuffer payload = getBytes(id);
+            if (payload != null) result.put(id, payload);
+        }
+        return result;
+    }
+
+    // [fromId, toId] aralığındaki mesajlar id sırasıyla, en fazla limit tane.
+    // Varsayılan aralıktaki her id'yi tek tek dener; motorlar sıralı id index'inden override eder.
+    default Map<Integer, ByteBuffer> scan(int fromId, int toId, int limit) {
+        Map<Integer, ByteBuffer> result = new LinkedHashMap<>();
+        for (long id = fromId; id <= toId && result.size() < limit; id++) {
+            ByteBuffer payload = getBytes((int) id);
+            if (payload != null) result.put((int) id, payload);
+        }
+        return result;
+    }
+
+    // RECOVERY=lazy ise gRPC sunucusu açıldıktan sonra çağrılır; diskteki veri arka planda yüklenir
+    default void startRecovery() {
+    }
+
+    // yükleme ilerlemesi (0-100); 100 ise recovery bitmiştir
+    default int getRecoveryPercent() {
+        return 100;
+    }
+
+    // düğüm istatistiklerinde basılan sayaçlar (cache hit/miss vb.)
+    default Map<String, Long> getStats() {
+        return Collections.emptyMap();
+    }
 }
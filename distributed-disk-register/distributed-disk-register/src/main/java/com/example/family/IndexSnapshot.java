@@ -0,0 +1,102 @@
+package com.example.family;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// index.snapshot: [magic][version][segment][offset][count][(id, pointer) * count][crc32c]
+// Açılışta snapshot yüklenir, log sadece (segment, offset) noktasından itibaren yeniden okunur.
+final class IndexSnapshot {
+
+    private static final int MAGIC = 0x49445853; // "IDXS"
+    private static final int VERSION = 1;
+    private static final int ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+
+    final int segmentId;
+    final long offset;
+    final int count;
+
+    private IndexSnapshot(int segmentId, long offset, int count) {
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.count = count;
+    }
+
+    // writer kilidi altında çağrılmalı; index'in o anki kopyasını çıkarır
+    static ByteBuffer capture(IntLongIndex index) {
+        ByteBuffer entries = ByteBuffer.allocate(index.size() * ENTRY_SIZE);
+        index.forEach((key, value) -> entries.putInt(key).putLong(value));
+        entries.flip();
+        return entries;
+    }
+
+    static void write(Path file, int segmentId, long offset, ByteBuffer entries) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(segmentId);
+            out.writeLong(offset);
+            out.writeInt(entries.remaining() / ENTRY_SIZE);
+            out.write(entries.array(), entries.position(), entries.remaining());
+            out.flush();
+            // crc kendisi checksum'a dahil edilmez
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            // rename'den önce içerik diskte olmalı; yoksa çökmede yarım snapshot eskisinin yerini alır
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileSync.directory(file.toAbsolutePath().getParent());
+    }
+
+    // Geçerli bir snapshot varsa index'e yükler, yoksa null döner
+    static IndexSnapshot load(Path file, IntLongIndex index) {
+        if (!Files.exists(file)) return null;
+
+        CRC32C crc = new CRC32C();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), crc);
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Index snapshot formatı tanınmadı: " + file);
+                return null;
+            }
+            int segmentId = in.readInt();
+            long offset = in.readLong();
+            int count = in.readInt();
+
+            index.ensureCapacity(index.size() + count);
+            for (int i = 0; i < count; i++) {
+                index.put(in.readInt(), in.readLong());
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                System.err.println("Index snapshot checksum hatalı, log baştan okunacak: " + file);
+                index.clear();
+                return null;
+            }
+            return new IndexSnapshot(segmentId, offset, count);
+        } catch (IOException e) {
+            System.err.println("Index snapshot okunamadı (" + e.getMessage() + "), log baştan okunacak.");
+            index.clear();
+            return null;
+        }
+    }
+}
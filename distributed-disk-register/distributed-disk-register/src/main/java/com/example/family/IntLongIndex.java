@@ -0,0 +1,267 @@
+package com.example.family;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongBinaryOperator;
+
+// int -> long açık adresli (linear probing) hash tablosu.
+// Anahtar ve değerler ilkel dizilerde tutulur; girdi başına Integer/Long/Node nesnesi oluşmaz.
+// Değer olarak -1 saklanamaz, "yok" anlamında kullanılır.
+// orderedKeys ile oluşturulursa anahtarlar ayrıca SortedIntSet'te tutulur; aralık taraması tabloyu dolaşmaz.
+public class IntLongIndex {
+
+    public static final long MISSING = -1L;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+    private int shift;
+    private final SortedIntSet ordered;
+
+    public IntLongIndex() {
+        this(1024);
+    }
+
+    public IntLongIndex(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    public IntLongIndex(int expectedSize, boolean orderedKeys) {
+        this.ordered = orderedKeys ? new SortedIntSet() : null;
+        allocate(capacityFor(expectedSize));
+    }
+
+    // toplu yüklemeden önce tabloyu bir kerede büyütür
+    public void ensureCapacity(int expectedSize) {
+        lock.writeLock().lock();
+        try {
+            int capacity = capacityFor(expectedSize);
+            if (capacity > keys.length) rehash(capacity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long get(int key) {
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            return slot < 0 ? MISSING : values[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    // önceki değeri döner, yoksa MISSING
+    public long put(int key, long value) {
+        lock.writeLock().lock();
+        try {
+            return putUnlocked(key, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Anahtar yoksa value yazılır, varsa (eski, yeni) için fonksiyonun sonucu yazılır
+    public long merge(int key, long value, LongBinaryOperator function) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) {
+                putUnlocked(key, value);
+                return value;
+            }
+            long merged = function.applyAsLong(values[slot], value);
+            values[slot] = merged;
+            return merged;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Sadece mevcut değer beklenen ile aynıysa günceller (compaction sırasında yarışı önlemek için)
+    public boolean replace(int key, long expected, long value) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0 || values[slot] != expected) return false;
+            values[slot] = value;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long remove(int key) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) return MISSING;
+            long old = values[slot];
+            deleteSlot(slot);
+            if (ordered != null) ordered.remove(key);
+            return old;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            allocate(16);
+            if (ordered != null) ordered.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) keys.length * (Integer.BYTES + Long.BYTES + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // [from, to] aralığındaki anahtarlar artan sırada, en fazla limit tane.
+    // orderedKeys olmayan tabloda bütün tablo dolaşılıp sıralanır.
+    public int[] keysInRange(int from, int to, int limit) {
+        lock.readLock().lock();
+        try {
+            if (ordered != null) return ordered.range(from, to, limit);
+            if (from > to || limit <= 0) return new int[0];
+            int[] found = new int[16];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (!used[i] || keys[i] < from || keys[i] > to) continue;
+                if (n == found.length) found = Arrays.copyOf(found, n * 2);
+                found[n++] = keys[i];
+            }
+            Arrays.sort(found, 0, n);
+            return Arrays.copyOf(found, Math.min(n, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public interface Visitor {
+        void visit(int key, long value);
+    }
+
+    // Okuma kilidi altında dolaşır; visitor içinden index değiştirilmemeli
+    public void forEach(Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                if (used[i]) visitor.visit(keys[i], values[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long putUnlocked(int key, long value) {
+        long old = insert(key, value);
+        if (old == MISSING) {
+            if (ordered != null) ordered.add(key);
+            if (size > keys.length * LOAD_FACTOR) {
+                rehash(keys.length << 1);
+            }
+        }
+        return old;
+    }
+
+    private long insert(int key, long value) {
+        int slot = home(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                long old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return MISSING;
+    }
+
+    private int find(int key) {
+        int slot = home(key);
+        while (used[slot]) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // linear probing'de silinen yerin ardındaki zincir geri kaydırılır (tombstone bırakılmaz)
+    private void deleteSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = home(keys[next]);
+            boolean movable = gap <= next ? (home <= gap || home > next) : (home <= gap && home > next);
+            if (movable) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) insert(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        return Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        size = 0;
+    }
+
+    // Fibonacci hashing: slot hash'in üst bitlerinden seçilir. Böylece bir tablo slot sırasıyla
+    // dolaşılıp başka boyuttaki bir tabloya (snapshot, rehash) eklenirken kümelenme oluşmaz.
+    private int home(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+}
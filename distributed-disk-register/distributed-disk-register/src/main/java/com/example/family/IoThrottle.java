@@ -0,0 +1,38 @@
+package com.example.family;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+// Arka plan işleri (compaction, scrub) için saniyede byte bütçesi; 0 veya negatif ise sınırsız
+final class IoThrottle {
+
+    // çok kısa uyumalar (timer hassasiyeti) bütçeden fazla yavaşlatır; borç birikince uyunur
+    private static final long MIN_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final long bytesPerSecond;
+    private long nextFreeNanos = System.nanoTime();
+
+    IoThrottle(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    // bytes kadar I/O yapmadan önce çağrılır; bütçe aşılmışsa bekler
+    synchronized void acquire(long bytes) throws InterruptedIOException {
+        if (bytesPerSecond <= 0) return;
+
+        long now = System.nanoTime();
+        // boşta geçen süre birikip sonradan ani bir patlamaya dönüşmesin
+        if (nextFreeNanos < now) nextFreeNanos = now;
+        long waitNanos = nextFreeNanos - now;
+        nextFreeNanos += bytes * 1_000_000_000L / bytesPerSecond;
+
+        if (waitNanos >= MIN_SLEEP_NANOS) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("I/O throttle beklerken kesildi");
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.family;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+// messages_<port>/<id>.msg düzenindeki eski dizinleri okur.
+// Dizin DirectoryStream ile akış halinde dolaşılır; File[] ile tüm liste belleğe alınmaz.
+final class LegacyMessageLoader {
+
+    private static final String SUFFIX = ".msg";
+
+    interface MessageSink {
+        void accept(int id, byte[] content) throws IOException;
+    }
+
+    private LegacyMessageLoader() {
+    }
+
+    // "<id>.msg" biçiminde değilse null
+    private static Integer parseId(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.valueOf(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // sadece dosya isimlerinden id'leri çıkarır, içerik okunmaz
+    static void listIds(Path dir, IntConsumer consumer) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                Integer id = parseId(file);
+                if (id != null) consumer.accept(id);
+            }
+        }
+    }
+
+    // listIds'in ilerleme yüzdesi için: isimler ayrıştırılmadan .msg dosyaları sayılır
+    static long countIds(Path dir) throws IOException {
+        long count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Dosyaları ForkJoin havuzunda paralel okur; aynı anda en fazla maxInFlight dosya okunur.
+    // sink farklı thread'lerden eş zamanlı çağrılır. Okunan dosya sayısını döner.
+    static long loadAll(Path dir, int parallelism, int maxInFlight, MessageSink sink) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        Semaphore inFlight = new Semaphore(Math.max(1, maxInFlight));
+        AtomicLong loaded = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                Integer id = parseId(file);
+                if (id == null) continue;
+
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        sink.accept(id, MessageFile.decode(Files.readAllBytes(file)));
+                        loaded.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        // sink'in RuntimeException'ı da hata sayılır; yoksa taşıma eksik kalıp başarılı görünür
+                        failed.incrementAndGet();
+                        System.err.println("Eski mesaj okunamadı " + file + ": " + e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("eski mesajlar okunurken kesildi");
+            }
+        }
+
+        if (failed.get() > 0) {
+            throw new IOException(failed.get() + " eski mesaj dosyası okunamadı");
+        }
+        return loaded.get();
+    }
+}
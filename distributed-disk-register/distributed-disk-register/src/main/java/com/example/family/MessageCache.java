@@ -0,0 +1,193 @@
+package com.example.family;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Byte ile sınırlı segmented LRU: yeni girenler probation'a, tekrar okunanlar protected'a geçer.
+// Tek seferlik okumalar (tarama) sıcak mesajları cache'ten atamaz.
+// Değerler UTF-8 byte[] olarak tutulur (String UTF-16'ya düşünce Türkçe metin iki kat yer kaplar);
+// String'e sadece metin protokolü istediğinde çevrilir. Dönen dizi paylaşılır, değiştirilmemelidir.
+// CACHE_OFFHEAP=true ise değerler SlabArena'da (heap dışı) durur; map'te sadece chunk handle'ı tutulur.
+public class MessageCache {
+
+    // dizi başlığı + map girdisi için yaklaşık sabit maliyet
+    private static final int ENTRY_OVERHEAD = 56;
+    // Long handle + map girdisi
+    private static final int SLAB_ENTRY_OVERHEAD = 40;
+    // arena doluyken aynı boyut sınıfından atılacak girdi için en fazla bu kadar eski girdiye bakılır
+    private static final int SAME_CLASS_SCAN = 64;
+
+    private final long maxBytes;
+    private final long protectedMaxBytes;
+    // değerler: arena yoksa byte[], varsa Long chunk handle'ı
+    private final LinkedHashMap<Integer, Object> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, Object> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final SlabArena arena;
+    private long probationBytes;
+    private long protectedBytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long slabRejected;
+
+    public MessageCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    private MessageCache(long maxBytes, SlabArena arena) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.protectedMaxBytes = this.maxBytes * 8 / 10;
+        this.arena = arena;
+    }
+
+    public static MessageCache fromConfig(StorageConfig config) {
+        long maxBytes = config.getLong("CACHE_MAX_BYTES", 64L * 1024 * 1024);
+        if (!config.getBoolean("CACHE_OFFHEAP", false) || maxBytes <= 0) {
+            return new MessageCache(maxBytes);
+        }
+        return new MessageCache(maxBytes, new SlabArena(maxBytes,
+                config.getInt("CACHE_SLAB_BYTES", 1024 * 1024), config.getDouble("CACHE_SLAB_GROWTH", 1.25)));
+    }
+
+    // off-heap modda her çağrı yeni bir kopya döner
+    public synchronized byte[] get(int id) {
+        Object value = protectedSegment.get(id);
+        if (value != null) {
+            hits++;
+            return load(value);
+        }
+
+        value = probation.remove(id);
+        if (value == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        long weight = weigh(value);
+        probationBytes -= weight;
+        protectedSegment.put(id, value);
+        protectedBytes += weight;
+        evict();
+        return load(value);
+    }
+
+    public synchronized void put(int id, byte[] value) {
+        invalidate(id);
+        if (ENTRY_OVERHEAD + value.length > maxBytes) return;
+
+        Object stored = store(value);
+        if (stored == null) {
+            slabRejected++;
+            return;
+        }
+        probation.put(id, stored);
+        probationBytes += weigh(stored);
+        evict();
+    }
+
+    public synchronized void invalidate(int id) {
+        Object old = probation.remove(id);
+        if (old != null) {
+            probationBytes -= weigh(old);
+            release(old);
+        }
+        old = protectedSegment.remove(id);
+        if (old != null) {
+            protectedBytes -= weigh(old);
+            release(old);
+        }
+    }
+
+    public synchronized void stats(Map<String, Long> out) {
+        out.put("cache.hits", hits);
+        out.put("cache.misses", misses);
+        out.put("cache.evictions", evictions);
+        out.put("cache.entries", (long) (probation.size() + protectedSegment.size()));
+        out.put("cache.bytes", probationBytes + protectedBytes);
+        out.put("cache.maxBytes", maxBytes);
+        if (arena != null) {
+            arena.stats(out);
+            out.put("slab.rejected", slabRejected);
+        }
+    }
+
+    private void evict() {
+        // protected taşarsa en eski girdiler probation'a düşer
+        while (protectedBytes > protectedMaxBytes && !protectedSegment.isEmpty()) {
+            Map.Entry<Integer, Object> eldest = removeEldest(protectedSegment);
+            long weight = weigh(eldest.getValue());
+            protectedBytes -= weight;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += weight;
+        }
+
+        while (probationBytes + protectedBytes > maxBytes) {
+            Object value;
+            if (!probation.isEmpty()) {
+                value = removeEldest(probation).getValue();
+                probationBytes -= weigh(value);
+            } else {
+                value = removeEldest(protectedSegment).getValue();
+                protectedBytes -= weigh(value);
+            }
+            release(value);
+            evictions++;
+        }
+    }
+
+    // Slab'ların hepsi başka sınıflara verilmişse yeni değerin sınıfında chunk kalmayabilir;
+    // o sınıftan en eski girdi atılır ve chunk'ı yeni değere geçer. Yer açılamazsa değer cache'lenmez.
+    private Object store(byte[] value) {
+        if (arena == null) return value;
+        long handle = arena.allocate(value);
+        if (handle == SlabArena.NONE) {
+            int sizeClass = arena.sizeClass(value.length);
+            if (sizeClass >= 0 && (evictSameClass(probation, sizeClass) || evictSameClass(protectedSegment, sizeClass))) {
+                handle = arena.allocate(value);
+            }
+        }
+        return handle == SlabArena.NONE ? null : (Object) handle;
+    }
+
+    private boolean evictSameClass(LinkedHashMap<Integer, Object> segment, int sizeClass) {
+        Iterator<Map.Entry<Integer, Object>> it = segment.entrySet().iterator();
+        for (int scanned = 0; it.hasNext() && scanned < SAME_CLASS_SCAN; scanned++) {
+            Object value = it.next().getValue();
+            if (arena.classOf((Long) value) != sizeClass) continue;
+            it.remove();
+            if (segment == probation) {
+                probationBytes -= weigh(value);
+            } else {
+                protectedBytes -= weigh(value);
+            }
+            release(value);
+            evictions++;
+            return true;
+        }
+        return false;
+    }
+
+    private byte[] load(Object value) {
+        return arena == null ? (byte[]) value : arena.read((Long) value);
+    }
+
+    private void release(Object value) {
+        if (arena != null) arena.free((Long) value);
+    }
+
+    private static Map.Entry<Integer, Object> removeEldest(LinkedHashMap<Integer, Object> map) {
+        Iterator<Map.Entry<Integer, Object>> it = map.entrySet().iterator();
+        Map.Entry<Integer, Object> eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    // off-heap modda chunk boyutu sayılır; sınıf yuvarlaması da bütçeden düşer
+    private long weigh(Object value) {
+        if (arena == null) return ENTRY_OVERHEAD + ((byte[]) value).length;
+        return SLAB_ENTRY_OVERHEAD + arena.chunkSize((Long) value);
+    }
+}
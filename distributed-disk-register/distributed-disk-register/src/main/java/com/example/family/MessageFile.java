@@ -0,0 +1,44 @@
+package com.example.family;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+// messages_<port>/<id>.msg dosya biçimi: [payload][crc32c:int][magic:int]
+// Trailer'ı olmayan eski dosyalar olduğu gibi (kontrolsüz) okunur.
+final class MessageFile {
+
+    // ilk byte 0xFF geçerli UTF-8 değildir; metin mesajları bu dört byte ile bitemez
+    private static final int MAGIC = 0xFF4D5347; // 0xFF "MSG"
+    static final int TRAILER_SIZE = 2 * Integer.BYTES;
+
+    private MessageFile() {
+    }
+
+    // payload'ın position/limit'i değişmez
+    static ByteBuffer trailer(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        trailer.putInt((int) crc.getValue()).putInt(MAGIC);
+        trailer.flip();
+        return trailer;
+    }
+
+    // dosya içeriğinden payload'ı çıkarır; checksum tutmazsa IOException
+    static byte[] decode(byte[] content) throws IOException {
+        if (content.length < TRAILER_SIZE) return content;
+        ByteBuffer trailer = ByteBuffer.wrap(content, content.length - TRAILER_SIZE, TRAILER_SIZE);
+        int expected = trailer.getInt();
+        if (trailer.getInt() != MAGIC) return content;
+
+        int length = content.length - TRAILER_SIZE;
+        CRC32C crc = new CRC32C();
+        crc.update(content, 0, length);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("checksum hatalı, dosya bozuk");
+        }
+        return Arrays.copyOf(content, length);
+    }
+}
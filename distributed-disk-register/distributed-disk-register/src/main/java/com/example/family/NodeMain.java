@@ -2,6 +2,10 @@ package com.example.family;
 
 import java.util.Map;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
 
 import family.Empty;
 import family.FamilyServiceGrpc;
@@ -9,17 +13,19 @@ import family.FamilyView;
 import family.NodeInfo;
 import family.ChatMessage;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.grpc.Context;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
 
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.net.ServerSocket;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -33,12 +39,20 @@ public class NodeMain {
     private static final java.util.concurrent.atomic.AtomicInteger requestCounter = new java.util.concurrent.atomic.AtomicInteger(0);
     private static int TOLERANCE = 1;
     private static final Map<Integer, List<NodeInfo>> messageLocations = new ConcurrentHashMap<>();
+    // SET/GET replikasyonu için üye başına tek kanal; pipelining'de her komutta kanal kurulmaz
+    private static final Map<String, ManagedChannel> memberChannels = new ConcurrentHashMap<>();
+    // MSET/MGET'te düğüme giden tek StoreBatch/RetrieveBatch çağrısının sınırları
+    private static final int BATCH_MAX_IDS = 256;
+    private static final int BATCH_MAX_BYTES = 1 << 20;
     private static IStorageService storageService; //new BufferedStorageService();
     public static void main(String[] args) throws Exception {
         String host = "127.0.0.1";
         int port = findFreePort(START_PORT);
 
-       storageService = new BufferedStorageService(port);
+        StorageConfig storageConfig = StorageConfig.load("storage.conf");
+        storageService = createStorageService(port, storageConfig);
+        AsyncStorageService asyncStorage = new AsyncStorageService(storageService,
+                storageConfig.getInt("IO_THREADS", 16), "StorageIO-" + port);
 
         NodeInfo self = NodeInfo.newBuilder()
                 .setHost(host)
@@ -49,7 +63,7 @@ public class NodeMain {
         System.out.println("⚙️ Sistem Toleransı: " + TOLERANCE);
 
         NodeRegistry registry = new NodeRegistry();
-        FamilyServiceImpl service = new FamilyServiceImpl(registry, self, storageService);
+        FamilyServiceImpl service = new FamilyServiceImpl(registry, self, storageService, asyncStorage);
 
         Server server = ServerBuilder
                 .forPort(port)
@@ -59,8 +73,11 @@ public class NodeMain {
 
         System.out.printf("Node started on %s:%d%n", host, port);
 
+        // RECOVERY=lazy: düğüm trafiğe açıldıktan sonra disk verisi arka planda yüklenir
+        storageService.startRecovery();
+
         if (port == START_PORT) {
-            startLeaderTextListener(registry, self);
+            startLeaderTextListener(registry, self, storageConfig);
         }
 
         discoverExistingNodes(host, port, registry, self);
@@ -70,116 +87,144 @@ public class NodeMain {
         server.awaitTermination();
     }
 
-    private static void startLeaderTextListener(NodeRegistry registry, NodeInfo self) {
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(6666)) {
-                System.out.printf("Leader listening for text on TCP %s:%d%n",
-                        self.getHost(), 6666);
-
-                while (true) {
-                    Socket client = serverSocket.accept();
-                    new Thread(() -> handleClientTextConnection(client, registry, self)).start();
-                }
-
-            } catch (IOException e) {
-                System.err.println("Error in leader text listener: " + e.getMessage());
-            }
-        }, "LeaderTextListener").start();
+    // Port 6666: SET/GET/MSET/MGET/SCAN ve chat satırları. Soketler TextGateway'in I/O thread'lerinde okunur,
+    // komutlar (replikasyon RPC'leri) gateway'in worker havuzunda çalışır. Bir bağlantıdan gelen
+    // SET/GET/MSET/MGET'ler GATEWAY_PIPELINE_DEPTH'e kadar aynı anda çalışır; aynı id'ye dokunanlar sırayla.
+    // İlk byte'ı TextGateway.BINARY_MAGIC olan bağlantılar aynı komutları binary frame'lerle gönderir.
+    private static void startLeaderTextListener(NodeRegistry registry, NodeInfo self, StorageConfig config) {
+        try {
+            TextGateway gateway = new TextGateway(6666,
+                    config.getInt("GATEWAY_IO_THREADS", 2),
+                    config.getInt("GATEWAY_WORKER_THREADS", 32),
+                    config.getInt("GATEWAY_MAX_LINE_BYTES", 16 * 1024 * 1024),
+                    config.getInt("GATEWAY_PIPELINE_DEPTH", 64),
+                    (command, output) -> handleCommand(command, output, registry, self));
+            gateway.start();
+            System.out.printf("Leader listening for text on TCP %s:%d%n",
+                    self.getHost(), 6666);
+        } catch (IOException e) {
+            System.err.println("Error in leader text listener: " + e.getMessage());
+        }
     }
 
-    private static void handleClientTextConnection(Socket client, NodeRegistry registry, NodeInfo self) {
-        System.out.println("New TCP client connected: " + client.getRemoteSocketAddress());
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream()));
-             PrintWriter output = new PrintWriter(client.getOutputStream(), true)) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String text = line.trim();
-                if (text.isEmpty()) continue;
-
-                String[] parts = text.split(" ", 3);
-                String commandType = parts[0].toUpperCase();
-
-                // --- SET KOMUTU ---
-                if (commandType.equals("SET")) {
-                    try {
-                        int id = Integer.parseInt(parts[1]);
-                        String msg = parts[2];
+    // Text satırı ya da binary frame TextCommand ile byte'ların üzerinde çözülmüş gelir; SET payload'ı
+    // kopyalanmadan replikasyona gider. Sonuçları Reply bağlantının protokolüne göre yazar.
+    private static void handleCommand(TextCommand command, TextGateway.Reply output, NodeRegistry registry,
+                                      NodeInfo self) {
+        if (command.type() == TextCommand.EMPTY) return;
+        if (command.type() == TextCommand.INVALID) {
+            output.error(command.invalidReason());
+            return;
+        }
 
-                        List<NodeInfo> successfulNodes = new ArrayList<>();
+        // --- SET KOMUTU ---
+        if (command.type() == TextCommand.SET) {
+            try {
+                // id veya mesaj yoksa (eski split yolundaki gibi) cevap verilmez
+                if (!command.hasId() || !command.hasPayload()) return;
+                int id = command.id();
+                ByteBuffer msg = command.payload();
 
-                        List<NodeInfo> candidates = registry.snapshot().stream()
-                                .filter(n -> n.getPort() != self.getPort())
-                                .sorted(java.util.Comparator.comparingInt(NodeInfo::getPort))
-                                .collect(java.util.stream.Collectors.toList());
+                List<NodeInfo> successfulNodes = new ArrayList<>();
 
-                        if (!candidates.isEmpty()) {
-                            int currentIndex = requestCounter.getAndIncrement() % candidates.size();
-                            int sentCount = 0;
+                List<NodeInfo> candidates = storeCandidates(registry, self);
 
-                            for (int i = 0; i < candidates.size(); i++) {
-                                if (sentCount >= TOLERANCE) break;
+                if (!candidates.isEmpty()) {
+                    int currentIndex = requestCounter.getAndIncrement() % candidates.size();
+                    int sentCount = 0;
 
-                                NodeInfo target = candidates.get((currentIndex + i) % candidates.size());
+                    for (int i = 0; i < candidates.size(); i++) {
+                        if (sentCount >= TOLERANCE) break;
 
-                                if (callStoreRpcSync(target, id, msg)) {
-                                    successfulNodes.add(target);
-                                    sentCount++;
-                                }
-                            }
-                        }
+                        NodeInfo target = candidates.get((currentIndex + i) % candidates.size());
 
-                        if (successfulNodes.isEmpty()) {
-                            output.println("NOT_FOUND (Yazilacak uygun dugum bulunamadi)");
-                        } else {
-                            messageLocations.put(id, successfulNodes);
-                            output.println("OK");
+                        if (callStoreRpcSync(target, id, msg)) {
+                            successfulNodes.add(target);
+                            sentCount++;
                         }
+                    }
+                }
 
-                    } catch (Exception e) { /* ... */ }
+                if (successfulNodes.isEmpty()) {
+                    output.notFound(id);
+                } else {
+                    messageLocations.put(id, successfulNodes);
+                    output.stored(id);
                 }
 
-                else if (commandType.equals("GET")) {
-                    try {
-                        int id = Integer.parseInt(parts[1]);
-                        String result = null;
-
-                        List<NodeInfo> locations = messageLocations.get(id);
-                        if (locations != null) {
-                            for (NodeInfo loc : locations) {
-                                result = callRetrieveRpcSync(loc, id);
-                                if (result != null) break;
-                            }
-                        }
+            } catch (Exception e) { /* ... */ }
+        }
 
-                        if (result != null) {
-                            output.println("OK " + result);
-                        } else {
-                            output.println("NOT_FOUND");
-                        }
-                    } catch (Exception e) { /* ... */ }
+        else if (command.type() == TextCommand.GET) {
+            try {
+                if (!command.hasId()) return;
+                int id = command.id();
+                ByteString result = null;
+
+                List<NodeInfo> locations = messageLocations.get(id);
+                if (locations != null) {
+                    for (NodeInfo loc : locations) {
+                        result = callRetrieveRpcSync(loc, id);
+                        if (result != null) break;
+                    }
                 }
-                // --- CHAT / BROADCAST ---
-                else {
-                    ChatMessage msg = ChatMessage.newBuilder()
-                            .setText(text)
-                            .setFromHost(self.getHost())
-                            .setFromPort(self.getPort())
-                            .setTimestamp(System.currentTimeMillis())
-                            .build();
-                    broadcastToFamily(registry, self, msg);
-                    output.println("BROADCAST_SENT");
+
+                if (result != null) {
+                    output.value(id, result);
+                } else {
+                    output.notFound(id);
                 }
-            } 
-        } catch (IOException e) {
-            System.err.println("TCP client error: " + e.getMessage());
-        } finally {
+            } catch (Exception e) { /* ... */ }
+        }
+        // --- MSET KOMUTU: MSET <n>, ardından n satır "<id> <mesaj>" ---
+        else if (command.type() == TextCommand.MSET) {
+            try {
+                int stored = msetFamily(command.entryIds(), command.entryValues(), registry, self, output);
+                output.end(stored);
+            } catch (Exception e) {
+                output.error(e.getMessage());
+            }
+        }
+        // --- MGET KOMUTU: MGET <id> <id> ... ---
+        else if (command.type() == TextCommand.MGET) {
+            int[] ids = command.args();
+            if (ids == null) {
+                output.error("gecersiz id");
+                return;
+            }
             try {
-                client.close();
-            } catch (IOException ignored) {
+                int found = mgetFamily(ids, output);
+                output.end(found);
+            } catch (Exception e) {
+                output.error(e.getMessage());
+            }
+        }
+        // --- SCAN KOMUTU: SCAN <from> <to> [limit] ---
+        else if (command.type() == TextCommand.SCAN) {
+            try {
+                int[] range = command.args();
+                if (range == null || range.length < 2) {
+                    output.error("SCAN <from> <to> [limit] bekleniyor");
+                    return;
+                }
+                int limit = range.length > 2 ? range[2] : 0;
+                int sent = scanFamily(registry, self, range[0], range[1], limit, output);
+                output.end(sent);
+            } catch (Exception e) {
+                output.error(e.getMessage());
             }
         }
+        // --- CHAT / BROADCAST ---
+        else {
+            ChatMessage msg = ChatMessage.newBuilder()
+                    .setText(command.text())
+                    .setFromHost(self.getHost())
+                    .setFromPort(self.getPort())
+                    .setTimestamp(System.currentTimeMillis())
+                    .build();
+            broadcastToFamily(registry, self, msg);
+            output.broadcastSent();
+        }
     }
 
 
@@ -272,21 +317,31 @@ public class NodeMain {
             for (NodeInfo n : members) {
                 boolean isMe = (n.getPort() == self.getPort());
                 int currentMsgCount;
+                int recoveryPercent;
 
                 if (isMe) {
                     currentMsgCount = storageService.getCount();
+                    recoveryPercent = storageService.getRecoveryPercent();
                 } else {
 
-                    currentMsgCount = callGetCountRpc(n);
+                    family.CountResponse count = callGetCountRpc(n);
+                    currentMsgCount = count != null ? count.getCount() : -1;
+                    recoveryPercent = count != null && count.getRecovering() ? count.getRecoveryPercent() : 100;
                 }
 
 
-                System.out.printf(" - %s:%d%s[message %d]%n",
+                System.out.printf(" - %s:%d%s[message %d]%s%n",
                         n.getHost(),
                         n.getPort(),
                         isMe ? " (me)" : "",
-                        currentMsgCount);
+                        currentMsgCount,
+                        recoveryPercent < 100 ? " (yükleniyor %" + recoveryPercent + ")" : "");
 
+                if (isMe) {
+                    // tek çağrı: map bir kez kurulur, boşluk kontrolü ile basılan aynı anın değerleri
+                    Map<String, Long> stats = storageService.getStats();
+                    if (!stats.isEmpty()) System.out.println("   stats: " + stats);
+                }
             }
             System.out.println("======================================");
         }, 3, PRINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
@@ -319,6 +374,7 @@ public class NodeMain {
                     System.out.printf("Node %s:%d unreachable, removing from family%n",
                             n.getHost(), n.getPort());
                     registry.remove(n);
+                    closeMemberChannel(n);
                 } finally {
                     if (channel != null) {
                         channel.shutdownNow();
@@ -341,48 +397,340 @@ public class NodeMain {
         return 1;
     }
 
-    private static boolean callStoreRpcSync(NodeInfo target, int id, String value) {
-        ManagedChannel channel = ManagedChannelBuilder.forAddress(target.getHost(), target.getPort())
-                .usePlaintext().build();
+    private static IStorageService createStorageService(int port, StorageConfig config) {
+        String engine = config.getString("STORAGE", "buffered").toLowerCase();
+        System.out.println("⚙️ Depolama motoru: " + engine);
+        switch (engine) {
+            case "segmented":
+                return new SegmentedLogStorageService(port, config);
+            case "lsm":
+                return new LsmStorageService(port, config);
+            case "paged":
+                return new PagedStorageService(port, config);
+            case "buffered":
+                return new BufferedStorageService(port, config);
+            default:
+                System.out.println("⚠ Bilinmeyen STORAGE=" + engine + ", buffered kullanılıyor.");
+                return new BufferedStorageService(port, config);
+        }
+    }
+
+    // SET/MSET replika adayları: kendisi hariç üyeler, port sırasıyla
+    private static List<NodeInfo> storeCandidates(NodeRegistry registry, NodeInfo self) {
+        return registry.snapshot().stream()
+                .filter(n -> n.getPort() != self.getPort())
+                .sorted(java.util.Comparator.comparingInt(NodeInfo::getPort))
+                .collect(java.util.stream.Collectors.toList());
+    }
+
+    private static ManagedChannel memberChannel(NodeInfo target) {
+        return memberChannels.computeIfAbsent(target.getHost() + ":" + target.getPort(),
+                key -> ManagedChannelBuilder.forAddress(target.getHost(), target.getPort()).usePlaintext().build());
+    }
+
+    private static void closeMemberChannel(NodeInfo target) {
+        ManagedChannel channel = memberChannels.remove(target.getHost() + ":" + target.getPort());
+        if (channel != null) channel.shutdownNow();
+    }
+
+    private static boolean callStoreRpcSync(NodeInfo target, int id, ByteBuffer value) {
+        ManagedChannel channel = memberChannel(target);
         try {
             FamilyServiceGrpc.FamilyServiceBlockingStub stub = FamilyServiceGrpc.newBlockingStub(channel);
             family.StoreResult res = stub.store(family.StoredMessage.newBuilder()
-                    .setId(id).setText(value).build());
+                    .setId(id).setData(UnsafeByteOperations.unsafeWrap(value.duplicate())).build());
             return res.getSuccess();
         } catch (Exception e) {
             System.err.println("Replikasyon hatası (" + target.getPort() + "): " + e.getMessage());
             return false;
+        }
+    }
+
+    // Her düğüm aralığı Scan ile id sırasıyla stream eder; akışlar id'ye göre birleştirilir. Sadece
+    // messageLocations'taki (SET'i tamamlanmış) id'ler, orada kayıtlı bir düğümün kopyasından yazılır;
+    // eski kopyalar ve yarım kalmış SET'ler atlanır. Düğüm başına tek stream açılır, aralık belleğe alınmaz.
+    private static int scanFamily(NodeRegistry registry, NodeInfo self, int fromId, int toId, int limit,
+                                  TextGateway.Reply output) {
+        // atlanan kopyalar düğümün limitini yiyebileceği için düğümlerden limitsiz istenir; limit dolunca
+        // stream'ler iptal edilir (server tarafı akış kontrollü, istenmeyeni okumaz)
+        family.ScanRequest request = family.ScanRequest.newBuilder()
+                .setFromId(fromId).setToId(toId).build();
+        PriorityQueue<ScanStream> streams = new PriorityQueue<>(
+                java.util.Comparator.comparingInt((ScanStream stream) -> stream.current.getId()));
+        Context.CancellableContext scan = Context.current().withCancellation();
+        try {
+            Context previous = scan.attach();
+            try {
+                for (NodeInfo n : registry.snapshot()) {
+                    if (n.getPort() == self.getPort()) continue;
+                    ScanStream stream = new ScanStream(n,
+                            FamilyServiceGrpc.newBlockingStub(memberChannel(n)).scan(request));
+                    if (stream.advance()) streams.add(stream);
+                }
+            } finally {
+                scan.detach(previous);
+            }
+
+            int sent = 0;
+            Integer lastId = null;
+            while (!streams.isEmpty() && (limit <= 0 || sent < limit)) {
+                ScanStream stream = streams.poll();
+                family.StoredMessage message = stream.current;
+                // aynı id'nin kopyaları art arda gelir; kayıtlı düğümden gelen ilk kopya yazılır
+                List<NodeInfo> locations = messageLocations.get(message.getId());
+                if ((lastId == null || message.getId() != lastId)
+                        && locations != null && locations.contains(stream.node)) {
+                    output.value(message.getId(), messageBytes(message));
+                    lastId = message.getId();
+                    sent++;
+                }
+                if (stream.advance()) streams.add(stream);
+            }
+            return sent;
         } finally {
-            channel.shutdownNow();
+            // kanallar paylaşılıyor; sadece bu taramanın kalan stream'leri iptal edilir
+            scan.cancel(null);
         }
     }
 
-    private static int callGetCountRpc(NodeInfo target) {
+    private static final class ScanStream {
+        final NodeInfo node;
+        final Iterator<family.StoredMessage> messages;
+        family.StoredMessage current;
+
+        ScanStream(NodeInfo node, Iterator<family.StoredMessage> messages) {
+            this.node = node;
+            this.messages = messages;
+        }
+
+        // düğüm hata verirse akışı biter; diğer replikalar taramaya devam eder
+        boolean advance() {
+            try {
+                if (!messages.hasNext()) return false;
+                current = messages.next();
+                return true;
+            } catch (Exception e) {
+                System.err.println("Tarama hatası (" + node.getPort() + "): " + e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    // Her kayıt SET'teki gibi sıradaki round-robin adayından başlayarak TOLERANCE düğüme yazılır. Bir turda
+    // kayıtlar hedef düğüme göre gruplanır ve her düğüme StoreBatch ile aynı anda gidilir; hata veren
+    // düğümdeki kayıtlar sonraki turda halkadaki bir sonraki adaya denenir. Cevaplar istek sırasıyla yazılır.
+    // id veya mesajı olmayan kayıtların değeri null'dır. Aynı id birden fazla verilirse sadece sonuncusu
+    // yazılır (aynı düğüme farklı parçalarda paralel gidip hangisinin kalacağı belirsiz olurdu); öncekiler
+    // onun sonucuyla cevaplanır.
+    private static int msetFamily(int[] ids, ByteBuffer[] values, NodeRegistry registry, NodeInfo self,
+                                  TextGateway.Reply output) {
+        int n = ids.length;
+        List<NodeInfo> candidates = storeCandidates(registry, self);
+        List<List<NodeInfo>> stored = new ArrayList<>(n);
+        Map<Integer, Integer> last = new java.util.HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (values[i] != null) last.put(ids[i], i);
+        }
+        int[] first = new int[n];
+        int[] tried = new int[n];
+        for (int i = 0; i < n; i++) {
+            stored.add(new ArrayList<>());
+            if (values[i] != null && last.get(ids[i]) == i && !candidates.isEmpty()) {
+                first[i] = requestCounter.getAndIncrement() % candidates.size();
+            }
+        }
+
+        while (true) {
+            Map<NodeInfo, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (values[i] == null || last.get(ids[i]) != i) continue;
+                int missing = TOLERANCE - stored.get(i).size();
+                for (; missing > 0 && tried[i] < candidates.size(); missing--) {
+                    NodeInfo target = candidates.get((first[i] + tried[i]++) % candidates.size());
+                    groups.computeIfAbsent(target, k -> new ArrayList<>()).add(i);
+                }
+            }
+            if (groups.isEmpty()) break;
+
+            List<CompletableFuture<Void>> calls = new ArrayList<>();
+            for (Map.Entry<NodeInfo, List<Integer>> group : groups.entrySet()) {
+                NodeInfo target = group.getKey();
+                for (List<Integer> chunk : batchChunks(group.getValue(), i -> values[i].remaining())) {
+                    family.MessageBatch.Builder batch = family.MessageBatch.newBuilder();
+                    for (int i : chunk) {
+                        batch.addMessages(family.StoredMessage.newBuilder().setId(ids[i])
+                                .setData(UnsafeByteOperations.unsafeWrap(values[i].duplicate())));
+                    }
+                    calls.add(NodeMain.<family.StoreResult>asyncCall(observer -> FamilyServiceGrpc
+                                    .newStub(memberChannel(target)).storeBatch(batch.build(), observer))
+                            .handle((result, error) -> {
+                                if (error == null && result.getSuccess()) {
+                                    // TOLERANCE > 1 iken aynı kaydın listesine farklı düğümlerden eklenir
+                                    synchronized (stored) {
+                                        for (int i : chunk) stored.get(i).add(target);
+                                    }
+                                } else {
+                                    System.err.println("Toplu replikasyon hatası (" + target.getPort() + "): "
+                                            + (error != null ? error.getMessage() : result.getMessage()));
+                                }
+                                return null;
+                            }));
+                }
+            }
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+        }
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (values[i] == null) {
+                output.error("gecersiz satir");
+                continue;
+            }
+            int written = last.get(ids[i]);
+            if (stored.get(written).isEmpty()) {
+                output.notFound(ids[i]);
+            } else {
+                if (written == i) messageLocations.put(ids[i], stored.get(i));
+                output.stored(ids[i]);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Her id kayıtlı olduğu ilk düğümden istenir: id'ler düğüme göre gruplanır ve her düğüme RetrieveBatch
+    // ile aynı anda gidilir. Bulunamayan ya da düğümü hata veren id'ler sonraki turda bir sonraki replikadan
+    // istenir. Cevaplar istek sırasıyla yazılır.
+    private static int mgetFamily(int[] ids, TextGateway.Reply output) {
+        int n = ids.length;
+        ByteString[] results = new ByteString[n];
+        List<List<NodeInfo>> locations = new ArrayList<>(n);
+        for (int id : ids) {
+            locations.add(messageLocations.getOrDefault(id, Collections.emptyList()));
+        }
+        int[] tried = new int[n];
+
+        while (true) {
+            Map<NodeInfo, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (results[i] == null && tried[i] < locations.get(i).size()) {
+                    groups.computeIfAbsent(locations.get(i).get(tried[i]++), k -> new ArrayList<>()).add(i);
+                }
+            }
+            if (groups.isEmpty()) break;
+
+            List<CompletableFuture<Void>> calls = new ArrayList<>();
+            for (Map.Entry<NodeInfo, List<Integer>> group : groups.entrySet()) {
+                NodeInfo target = group.getKey();
+                for (List<Integer> chunk : batchChunks(group.getValue(), i -> 0)) {
+                    family.MessageIdBatch.Builder batch = family.MessageIdBatch.newBuilder().setAcceptData(true);
+                    for (int i : chunk) {
+                        batch.addIds(ids[i]);
+                    }
+                    calls.add(NodeMain.<family.MessageBatch>asyncCall(observer -> FamilyServiceGrpc
+                                    .newStub(memberChannel(target)).retrieveBatch(batch.build(), observer))
+                            .handle((result, error) -> {
+                                if (error != null) {
+                                    System.err.println("Toplu okuma hatası (" + target.getPort() + "): "
+                                            + error.getMessage());
+                                    return null;
+                                }
+                                // cevap istek sırasıyla; her indeks bir turda tek parçada olduğu için kilit gerekmez
+                                for (int j = 0; j < chunk.size() && j < result.getMessagesCount(); j++) {
+                                    family.StoredMessage message = result.getMessages(j);
+                                    if (message.getFound()) results[chunk.get(j)] = messageBytes(message);
+                                }
+                                return null;
+                            }));
+                }
+            }
+            CompletableFuture.allOf(calls.toArray(new CompletableFuture<?>[0])).join();
+        }
+
+        int found = 0;
+        for (int i = 0; i < n; i++) {
+            if (results[i] != null) {
+                output.value(ids[i], results[i]);
+                found++;
+            } else {
+                output.notFound(ids[i]);
+            }
+        }
+        return found;
+    }
+
+    // düğüme giden kayıtlar BATCH_MAX_IDS kayıt / BATCH_MAX_BYTES byte'lık çağrılara bölünür
+    private static List<List<Integer>> batchChunks(List<Integer> indexes, java.util.function.IntUnaryOperator bytes) {
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Integer> current = new ArrayList<>();
+        long currentBytes = 0;
+        for (int i : indexes) {
+            int size = bytes.applyAsInt(i);
+            if (!current.isEmpty() && (current.size() == BATCH_MAX_IDS || currentBytes + size > BATCH_MAX_BYTES)) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+            current.add(i);
+            currentBytes += size;
+        }
+        if (!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    // tek cevaplı async gRPC çağrısı; cevap ya da hata future'a aktarılır
+    private static <T> CompletableFuture<T> asyncCall(java.util.function.Consumer<StreamObserver<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            call.accept(new StreamObserver<T>() {
+                @Override
+                public void onNext(T value) {
+                    result.complete(value);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    result.completeExceptionally(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static family.CountResponse callGetCountRpc(NodeInfo target) {
         ManagedChannel channel = ManagedChannelBuilder.forAddress(target.getHost(), target.getPort())
                 .usePlaintext().build();
         try {
             FamilyServiceGrpc.FamilyServiceBlockingStub stub = FamilyServiceGrpc.newBlockingStub(channel);
-            family.CountResponse res = stub.getCount(family.Empty.newBuilder().build());
-            return res.getCount();
+            return stub.getCount(family.Empty.newBuilder().build());
         } catch (Exception e) {
-            return -1; // Hata durumunda
+            return null; // Hata durumunda
         } finally {
             channel.shutdownNow();
         }
     }
 
-    private static String callRetrieveRpcSync(NodeInfo target, int id) {
-        ManagedChannel channel = ManagedChannelBuilder.forAddress(target.getHost(), target.getPort())
-                .usePlaintext().build();
+    private static ByteString callRetrieveRpcSync(NodeInfo target, int id) {
+        ManagedChannel channel = memberChannel(target);
         try {
             FamilyServiceGrpc.FamilyServiceBlockingStub stub = FamilyServiceGrpc.newBlockingStub(channel);
             family.StoredMessage res = stub.retrieve(family.MessageId.newBuilder()
-                    .setId(id).build());
-            return res.getFound() ? res.getText() : null;
+                    .setId(id).setAcceptData(true).build());
+            if (!res.getFound()) return null;
+            return messageBytes(res);
         } catch (Exception e) {
             return null;
-        } finally {
-            channel.shutdownNow();
         }
     }
+
+    // eski kayıtlarda mesaj text alanında olabilir
+    private static ByteString messageBytes(family.StoredMessage message) {
+        return message.getData().isEmpty() ? ByteString.copyFromUtf8(message.getText()) : message.getData();
+    }
 }
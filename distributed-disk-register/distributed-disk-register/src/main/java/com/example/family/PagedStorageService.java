@@ -0,0 +1,646 @@
+package com.example.family;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+// Küçük mesajları sabit boyutlu sayfalara paketler: pages_<port>/pages.dat PAGE_SIZE'lık sayfalardan
+// oluşur, her sayfada birden çok kayıt durur. PAGE_INLINE_MAX_BYTES'tan büyük kayıtlar blobs.dat'a
+// eklenir, sayfada sadece yeri tutulur. Mesaj başına dosya (inode, dizin girdisi, yarım dolu blok) yok.
+//
+// Sayfa: [magic][kullanılan byte][kayıt...]
+// Kayıt: [id][seq:long][uzunluk][crc32c][veri]; uzunluk BLOB ise veri [blob offset:long][blob uzunluk]
+// Aynı id tekrar yazılınca yeni kopya daha büyük seq ile boş yeri olan bir sayfaya yazılır; eski kopya
+// sayfası yeniden yazılırken atılır. Açılışta sayfalar taranır ve her id için en büyük seq geçerli olur.
+// Diskteki sayfa yerinde değiştirilmez: kayıt eklenecek sayfanın canlı kayıtları boş bir slota kopyalanır
+// ve eski slot ancak yeni kopya diske yazıldıktan sonra yeniden kullanılır; yarım kalan sayfa yazması
+// sadece o batch'in kayıtlarını kaybettirir. blobs.dat sıkıştırılmaz (bkz. storage.conf).
+public class PagedStorageService implements IStorageService {
+
+    private static final int PAGE_MAGIC = 0x50414745; // "PAGE"
+    private static final int PAGE_HEADER = 2 * Integer.BYTES;
+    private static final int ENTRY_HEADER = 3 * Integer.BYTES + Long.BYTES;
+    private static final int BLOB = -1;
+    private static final int BLOB_REF = Long.BYTES + Integer.BYTES;
+
+    private final Path storageDir;
+    private final int pageSize;
+    private final int inlineMaxBytes;
+    private final boolean durable;
+    private final MessageCache cache;
+    private final ValueCodec codec;
+
+    private final FileChannel pages;
+    private final FileChannel blobs;
+    private long blobSize;
+
+    // id -> sayfa << 32 | sayfa içi offset << 16 | kayıt uzunluğu
+    private final IntLongIndex index = new IntLongIndex(1024, true);
+    // yazarlar tek tek girer; sayfa yazma + index güncellemesi okuyuculara karşı rw kilidiyle atomik
+    private final Object writeLock = new Object();
+    private final ReadWriteLock layoutLock = new ReentrantReadWriteLock();
+    private long seq;
+    private int pageCount;
+    // sayfa başına canlı kayıt byte'ı
+    private int[] pageLive = new int[64];
+    // (boş byte << 32 | sayfa); en az n byte boşu olan en dolu sayfa ceiling ile bulunur
+    private final TreeSet<Long> freeSpace = new TreeSet<>();
+    // canlı kaydı olmayan ve bu hali diske yazılmış slotlar; üzerine yazılabilir
+    private final TreeSet<Integer> emptySlots = new TreeSet<>();
+
+    private final AtomicLong pageWrites = new AtomicLong();
+    private final AtomicLong pageCompactions = new AtomicLong();
+    private final AtomicLong blobGarbage = new AtomicLong();
+    private final AtomicLong corruptRecords = new AtomicLong();
+
+    public PagedStorageService(int port, StorageConfig config) {
+        this.storageDir = Paths.get("pages_" + port);
+        // offset ve uzunluk pointer'da 16 bit
+        this.pageSize = Math.max(1024, Math.min(32 * 1024, config.getInt("PAGE_SIZE", 4096)));
+        this.inlineMaxBytes = Math.max(0, Math.min(pageSize - PAGE_HEADER - ENTRY_HEADER,
+                config.getInt("PAGE_INLINE_MAX_BYTES", 1024)));
+        this.durable = config.getBoolean("DURABLE", false);
+        this.cache = MessageCache.fromConfig(config);
+        this.codec = new ValueCodec(storageDir, config);
+
+        Path legacyDir = Paths.get("messages_" + port);
+        try {
+            Files.createDirectories(storageDir);
+            this.pages = FileChannel.open(storageDir.resolve("pages.dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.blobs = FileChannel.open(storageDir.resolve("blobs.dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            open();
+            if (config.getBoolean("MIGRATE_LEGACY", false) && Files.isDirectory(legacyDir)) {
+                migrateLegacy(legacyDir, config.getInt("RECOVERY_THREADS", Runtime.getRuntime().availableProcessors()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sayfa dosyası açılamadı: " + storageDir, e);
+        }
+    }
+
+    @Override
+    public void put(int id, String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        if (write(Collections.singletonMap(id, ByteBuffer.wrap(payload)))) {
+            cache.put(id, payload);
+        }
+    }
+
+    @Override
+    public String get(int id) {
+        byte[] cached = cache.get(id);
+        if (cached != null) return new String(cached, StandardCharsets.UTF_8);
+
+        byte[] payload = read(id);
+        if (payload == null) return null;
+
+        cache.put(id, payload);
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void putBytes(int id, ByteBuffer payload) {
+        if (write(Collections.singletonMap(id, payload))) {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public ByteBuffer getBytes(int id) {
+        byte[] cached = cache.get(id);
+        if (cached != null) return ByteBuffer.wrap(cached).asReadOnlyBuffer();
+
+        byte[] payload = read(id);
+        if (payload == null) return null;
+
+        cache.put(id, payload);
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    // aynı sayfaya düşen kayıtlar için sayfa bir kez yazılır
+    @Override
+    public void putAll(Map<Integer, ByteBuffer> messages) {
+        if (messages.isEmpty()) return;
+        if (write(messages)) {
+            for (int id : messages.keySet()) {
+                cache.invalidate(id);
+            }
+        }
+    }
+
+    // cache'te olmayanlar sayfa sırasıyla okunur; aynı sayfadaki kayıtlar ardışık okunur
+    @Override
+    public Map<Integer, ByteBuffer> getAll(int[] ids) {
+        ByteBuffer[] found = new ByteBuffer[ids.length];
+        long[] pointers = new long[ids.length];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            byte[] cached = cache.get(ids[i]);
+            if (cached != null) {
+                found[i] = ByteBuffer.wrap(cached).asReadOnlyBuffer();
+                continue;
+            }
+            pointers[i] = index.get(ids[i]);
+            if (pointers[i] != IntLongIndex.MISSING) misses.add(i);
+        }
+
+        misses.sort((a, b) -> Long.compare(pointers[a], pointers[b]));
+        for (int i : misses) {
+            byte[] payload = read(ids[i]);
+            if (payload == null) continue;
+            cache.put(ids[i], payload);
+            found[i] = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+
+        Map<Integer, ByteBuffer> result = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (found[i] != null) result.put(ids[i], found[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Integer, ByteBuffer> scan(int fromId, int toId, int limit) {
+        return getAll(index.keysInRange(fromId, toId, limit));
+    }
+
+    @Override
+    public int getCount() {
+        return index.size();
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        long liveBytes = 0;
+        long fileBytes;
+        synchronized (writeLock) {
+            for (int i = 0; i < pageCount; i++) {
+                liveBytes += pageLive[i];
+            }
+            fileBytes = (long) pageCount * pageSize;
+        }
+        stats.put("pages", fileBytes / pageSize);
+        stats.put("pages.empty", (long) emptySlots.size());
+        stats.put("pages.bytes", fileBytes);
+        stats.put("pages.liveBytes", liveBytes);
+        stats.put("pages.fillPercent", fileBytes == 0 ? 0 : liveBytes * 100 / fileBytes);
+        stats.put("pages.writes", pageWrites.get());
+        stats.put("pages.compactions", pageCompactions.get());
+        stats.put("blob.bytes", blobSize);
+        stats.put("blob.garbageBytes", blobGarbage.get());
+        stats.put("corrupt.records", corruptRecords.get());
+        codec.stats(stats);
+        cache.stats(stats);
+        return stats;
+    }
+
+    private byte[] read(int id) {
+        long pointer;
+        ByteBuffer entry;
+        layoutLock.readLock().lock();
+        try {
+            pointer = index.get(id);
+            if (pointer == IntLongIndex.MISSING) return null;
+            entry = readFully(pages, pagePosition(pointer) + offset(pointer), length(pointer));
+        } catch (IOException e) {
+            System.err.printf("Okuma hatası (ID %d): %s%n", id, e.getMessage());
+            return null;
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+
+        try {
+            if (entry.getInt(0) != id || !checksumMatches(entry)) {
+                corruptRecords.incrementAndGet();
+                System.err.printf("Okuma hatası (ID %d): sayfa %d bozuk%n", id, page(pointer));
+                return null;
+            }
+            int length = entry.getInt(Integer.BYTES + Long.BYTES);
+            byte[] stored;
+            if (length == BLOB) {
+                stored = readBlob(id, entry.getLong(ENTRY_HEADER), entry.getInt(ENTRY_HEADER + Long.BYTES));
+            } else {
+                stored = new byte[length];
+                entry.position(ENTRY_HEADER);
+                entry.get(stored);
+            }
+            return codec.decode(stored);
+        } catch (IOException e) {
+            System.err.printf("Okuma hatası (ID %d): %s%n", id, e.getMessage());
+            return null;
+        }
+    }
+
+    // blobs.dat sadece sona eklenir; yazılmış bölge değişmediği için kilitsiz okunur
+    private byte[] readBlob(int id, long offset, int recordSize) throws IOException {
+        ByteBuffer record = readFully(blobs, offset, recordSize);
+        int storedId = record.getInt();
+        int length = record.getInt();
+        int crc = record.getInt();
+        if (storedId != id || RecordCodec.recordSize(length) != recordSize
+                || RecordCodec.checksum(id, length, record) != crc) {
+            corruptRecords.incrementAndGet();
+            throw new IOException("blob bozuk @" + offset);
+        }
+        byte[] payload = new byte[length];
+        record.get(payload);
+        return payload;
+    }
+
+    private boolean write(Map<Integer, ByteBuffer> messages) {
+        List<Integer> ids = new ArrayList<>(messages.size());
+        List<ByteBuffer> stored = new ArrayList<>(messages.size());
+        for (Map.Entry<Integer, ByteBuffer> entry : messages.entrySet()) {
+            ids.add(entry.getKey());
+            stored.add(codec.encode(entry.getValue()));
+        }
+
+        try {
+            synchronized (writeLock) {
+                // Sayfalar önce bellekte değiştirilir; index değişiklikleri pending'de birikir ve sayfalar
+                // diske yazıldıktan sonra okuyuculara görünür olur
+                Map<Integer, ByteBuffer> dirty = new TreeMap<>();
+                IntLongIndex pending = new IntLongIndex(ids.size());
+                List<Integer> released = new ArrayList<>();
+                boolean blobWritten = false;
+
+                for (int i = 0; i < ids.size(); i++) {
+                    int id = ids.get(i);
+                    ByteBuffer data = stored.get(i);
+                    int length = data.remaining();
+                    if (length > inlineMaxBytes) {
+                        long offset = appendBlob(id, data);
+                        data = ByteBuffer.allocate(BLOB_REF).putLong(offset).putInt(RecordCodec.recordSize(length));
+                        data.flip();
+                        length = BLOB;
+                        blobWritten = true;
+                    }
+                    ByteBuffer entry = encodeEntry(id, ++seq, length, data);
+                    place(id, entry, dirty, pending, released);
+                }
+
+                if (blobWritten && durable) blobs.force(false);
+                layoutLock.writeLock().lock();
+                try {
+                    for (Map.Entry<Integer, ByteBuffer> page : dirty.entrySet()) {
+                        writeFully(pages, (long) page.getKey() * pageSize, page.getValue().duplicate().clear());
+                        pageWrites.incrementAndGet();
+                    }
+                    pending.forEach(index::put);
+                } finally {
+                    layoutLock.writeLock().unlock();
+                }
+                if (durable) pages.force(false);
+                // kayıtları yeni slotlara taşınan sayfalar artık yeniden kullanılabilir
+                emptySlots.addAll(released);
+            }
+            return true;
+        } catch (IOException e) {
+            if (durable) {
+                throw new UncheckedIOException("Kalıcı yazma hatası (" + ids.size() + " kayıt)", e);
+            }
+            System.err.println("Yazma hatası (" + ids.size() + " kayıt): " + e.getMessage());
+            return false;
+        }
+    }
+
+    // writeLock altında: kaydı en az kendi boyu kadar boşu olan en dolu sayfaya koyar. dirty'deki sayfalar
+    // bu batch'te boş slotlara yazılacak kopyalardır, bellekte serbestçe değiştirilir.
+    private void place(int id, ByteBuffer entry, Map<Integer, ByteBuffer> dirty, IntLongIndex pending,
+            List<Integer> released) throws IOException {
+        int size = entry.remaining();
+        long old = current(id, pending);
+        if (old != IntLongIndex.MISSING) {
+            // eski kopya artık ölü; sayfası sonraki yeniden yazımda sıkıştırılır
+            addLive(page(old), -length(old));
+            if (isBlobEntry(old, dirty)) blobGarbage.addAndGet(blobSizeOf(old, dirty));
+            if (pageLive[page(old)] == 0 && !dirty.containsKey(page(old))) release(page(old), released);
+        }
+
+        Long candidate = freeSpace.ceiling((long) size << 32);
+        int target;
+        if (candidate == null) {
+            target = allocate(dirty);
+        } else if (dirty.containsKey((int) (long) candidate)) {
+            target = (int) (long) candidate;
+        } else {
+            target = relocate((int) (long) candidate, id, dirty, pending, released);
+        }
+
+        ByteBuffer page = dirty.get(target);
+        if (pageSize - page.getInt(Integer.BYTES) < size) {
+            compact(target, page, id, pending);
+        }
+
+        int offset = page.getInt(Integer.BYTES);
+        page.position(offset);
+        page.put(entry);
+        page.putInt(Integer.BYTES, offset + size);
+        pending.put(id, pointer(target, offset, size));
+        addLive(target, size);
+    }
+
+    // Bu batch'te yazılacak sayfada canlı kayıtları başa toplar
+    private void compact(int pageNumber, ByteBuffer page, int replacedId, IntLongIndex pending) {
+        ByteBuffer compacted = newPage();
+        copyLive(pageNumber, page, pageNumber, compacted, replacedId, pending);
+        page.clear();
+        page.put(compacted.clear());
+        pageCompactions.incrementAndGet();
+    }
+
+    // Diskteki sayfanın canlı kayıtları boş bir slota kopyalanır (ölüler atılır); eski slot batch yazıldıktan
+    // sonra boşalır. Yarım kalan yazma yeni slotu bozar, önceden onaylanmış kayıtlar eski slotta kalır.
+    private int relocate(int source, int replacedId, Map<Integer, ByteBuffer> dirty, IntLongIndex pending,
+            List<Integer> released) throws IOException {
+        ByteBuffer page = readFully(pages, (long) source * pageSize, pageSize);
+        int target = allocate(dirty);
+        ByteBuffer copy = dirty.get(target);
+        if (page.getInt(0) == PAGE_MAGIC) {
+            copyLive(source, page, target, copy, replacedId, pending);
+            if (copy.getInt(Integer.BYTES) < page.getInt(Integer.BYTES)) pageCompactions.incrementAndGet();
+        }
+        addLive(source, -pageLive[source]);
+        release(source, released);
+        addLive(target, copy.getInt(Integer.BYTES) - PAGE_HEADER);
+        return target;
+    }
+
+    // page'deki canlı kayıtları into'nun sonuna ekler; ölü kopyalar ve yerine yenisi yazılan id'nin eski
+    // kopyası atılır, taşınan kayıtların pointer'ı into sayfasına güncellenir
+    private void copyLive(int fromPage, ByteBuffer page, int toPage, ByteBuffer into, int replacedId,
+            IntLongIndex pending) {
+        int used = Math.min(page.getInt(Integer.BYTES), pageSize);
+        int offset = PAGE_HEADER;
+        int position = into.getInt(Integer.BYTES);
+        while (offset + ENTRY_HEADER <= used) {
+            int id = page.getInt(offset);
+            int length = page.getInt(offset + Integer.BYTES + Long.BYTES);
+            int size = entrySize(length);
+            if (length < BLOB || offset + size > used) break;
+            if (id != replacedId && current(id, pending) == pointer(fromPage, offset, size)) {
+                ByteBuffer entry = page.duplicate();
+                entry.position(offset).limit(offset + size);
+                into.position(position);
+                into.put(entry);
+                pending.put(id, pointer(toPage, position, size));
+                position += size;
+            }
+            offset += size;
+        }
+        into.putInt(Integer.BYTES, position);
+    }
+
+    // yeni sayfa için önce boş slot, yoksa dosyanın sonu
+    private int allocate(Map<Integer, ByteBuffer> dirty) {
+        Integer empty = emptySlots.pollFirst();
+        int target;
+        if (empty != null) {
+            target = empty;
+        } else {
+            target = pageCount++;
+            if (target == pageLive.length) pageLive = Arrays.copyOf(pageLive, target * 2);
+        }
+        dirty.put(target, newPage());
+        addLive(target, 0);
+        return target;
+    }
+
+    // canlı kaydı kalmayan slot hedef olmaktan çıkar; batch diske yazılınca emptySlots'a geçer
+    private void release(int pageNumber, List<Integer> released) {
+        freeSpace.remove(freeKey(pageNumber, pageLive[pageNumber]));
+        released.add(pageNumber);
+    }
+
+    private long current(int id, IntLongIndex pending) {
+        long pointer = pending.get(id);
+        return pointer != IntLongIndex.MISSING ? pointer : index.get(id);
+    }
+
+    private boolean isBlobEntry(long pointer, Map<Integer, ByteBuffer> dirty) throws IOException {
+        return length(pointer) == ENTRY_HEADER + BLOB_REF
+                && entryAt(pointer, dirty).getInt(Integer.BYTES + Long.BYTES) == BLOB;
+    }
+
+    private int blobSizeOf(long pointer, Map<Integer, ByteBuffer> dirty) throws IOException {
+        return entryAt(pointer, dirty).getInt(ENTRY_HEADER + Long.BYTES);
+    }
+
+    private ByteBuffer entryAt(long pointer, Map<Integer, ByteBuffer> dirty) throws IOException {
+        ByteBuffer page = dirty.get(page(pointer));
+        if (page == null) return readFully(pages, pagePosition(pointer) + offset(pointer), length(pointer));
+        ByteBuffer entry = page.duplicate();
+        entry.position(offset(pointer)).limit(offset(pointer) + length(pointer));
+        return entry.slice();
+    }
+
+    private void addLive(int pageNumber, int delta) {
+        int before = pageLive[pageNumber];
+        freeSpace.remove(freeKey(pageNumber, before));
+        pageLive[pageNumber] = before + delta;
+        freeSpace.add(freeKey(pageNumber, pageLive[pageNumber]));
+    }
+
+    private long freeKey(int pageNumber, int live) {
+        return (long) (pageSize - PAGE_HEADER - live) << 32 | pageNumber;
+    }
+
+    private long appendBlob(int id, ByteBuffer payload) throws IOException {
+        long offset = blobSize;
+        ByteBuffer record = RecordCodec.encode(id, payload);
+        writeFully(blobs, offset, record);
+        blobSize = offset + record.limit();
+        return offset;
+    }
+
+    private ByteBuffer newPage() {
+        ByteBuffer page = ByteBuffer.allocate(pageSize);
+        page.putInt(PAGE_MAGIC).putInt(PAGE_HEADER);
+        return page;
+    }
+
+    private static ByteBuffer encodeEntry(int id, long seq, int length, ByteBuffer data) {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER + data.remaining());
+        entry.putInt(id).putLong(seq).putInt(length).putInt(0).put(data.duplicate());
+        entry.flip();
+        entry.putInt(ENTRY_HEADER - Integer.BYTES, checksum(entry));
+        return entry;
+    }
+
+    // crc alanı hariç başlık + veri
+    private static int checksum(ByteBuffer entry) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer view = entry.duplicate();
+        view.position(0).limit(ENTRY_HEADER - Integer.BYTES);
+        crc.update(view);
+        view.limit(entry.limit()).position(ENTRY_HEADER);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private static boolean checksumMatches(ByteBuffer entry) {
+        return entry.limit() >= ENTRY_HEADER && checksum(entry) == entry.getInt(ENTRY_HEADER - Integer.BYTES);
+    }
+
+    private static int entrySize(int length) {
+        return ENTRY_HEADER + (length == BLOB ? BLOB_REF : length);
+    }
+
+    private static long pointer(int page, int offset, int length) {
+        return (long) page << 32 | (long) offset << 16 | length;
+    }
+
+    private static int page(long pointer) {
+        return (int) (pointer >>> 32);
+    }
+
+    private static int offset(long pointer) {
+        return (int) (pointer >>> 16) & 0xFFFF;
+    }
+
+    private static int length(long pointer) {
+        return (int) pointer & 0xFFFF;
+    }
+
+    private long pagePosition(long pointer) {
+        return (long) page(pointer) * pageSize;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) throw new EOFException("@" + position);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    // Tüm sayfalar sırayla okunur; her id için en büyük seq'li geçerli kopya index'e girer
+    private void open() throws IOException {
+        long start = System.nanoTime();
+        long fileSize = pages.size();
+        // yarım yazılmış son sayfa (uzunluk sayfa boyunun katı değil) yok sayılır
+        pageCount = (int) (fileSize / pageSize);
+        pageLive = new int[Math.max(64, pageCount)];
+        IntLongIndex seqs = new IntLongIndex();
+        IntLongIndex blobRecords = new IntLongIndex();
+        int corruptPages = 0;
+
+        int batch = Math.max(1, (1 << 20) / pageSize);
+        for (int first = 0; first < pageCount; first += batch) {
+            int count = Math.min(batch, pageCount - first);
+            ByteBuffer chunk = readFully(pages, (long) first * pageSize, count * pageSize);
+            for (int p = 0; p < count; p++) {
+                ByteBuffer page = chunk.duplicate();
+                page.position(p * pageSize).limit((p + 1) * pageSize);
+                page = page.slice();
+                if (page.getInt(0) != PAGE_MAGIC) continue;
+                if (!scanPage(first + p, page, seqs, blobRecords)) corruptPages++;
+            }
+        }
+
+        long[] liveBlobBytes = {0};
+        blobRecords.forEach((id, size) -> liveBlobBytes[0] += size);
+        index.forEach((id, pointer) -> pageLive[page(pointer)] += length(pointer));
+        for (int p = 0; p < pageCount; p++) {
+            if (pageLive[p] == 0) {
+                emptySlots.add(p);
+            } else {
+                freeSpace.add(freeKey(p, pageLive[p]));
+            }
+        }
+        blobSize = blobs.size();
+        blobGarbage.set(Math.max(0, blobSize - liveBlobBytes[0]));
+
+        if (corruptPages > 0) {
+            System.err.printf("Sayfa dosyası: %d sayfada bozuk kayıt atlandı%n", corruptPages);
+        }
+        System.out.printf("Sayfa dosyası yüklendi: %d sayfa, %d mesaj, %d ms%n",
+                pageCount, index.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // bozuk kayıtta sayfanın geri kalanı okunamaz; false döner
+    private boolean scanPage(int pageNumber, ByteBuffer page, IntLongIndex seqs, IntLongIndex blobRecords) {
+        int used = Math.min(page.getInt(Integer.BYTES), pageSize);
+        int offset = PAGE_HEADER;
+        while (offset + ENTRY_HEADER <= used) {
+            int length = page.getInt(offset + Integer.BYTES + Long.BYTES);
+            int size = length == BLOB ? ENTRY_HEADER + BLOB_REF : ENTRY_HEADER + length;
+            if (length < BLOB || offset + size > used) return false;
+            ByteBuffer entry = page.duplicate();
+            entry.position(offset).limit(offset + size);
+            entry = entry.slice();
+            if (!checksumMatches(entry)) return false;
+
+            int id = entry.getInt(0);
+            long entrySeq = entry.getLong(Integer.BYTES);
+            seq = Math.max(seq, entrySeq);
+            long known = seqs.get(id);
+            if (known == IntLongIndex.MISSING || entrySeq > known) {
+                seqs.put(id, entrySeq);
+                index.put(id, pointer(pageNumber, offset, size));
+                if (length == BLOB) {
+                    blobRecords.put(id, entry.getInt(ENTRY_HEADER + Long.BYTES));
+                } else {
+                    blobRecords.remove(id);
+                }
+            }
+            offset += size;
+        }
+        return true;
+    }
+
+    // messages_<port> tek geçişte sayfalara taşınır; sayfalarda zaten olan id'ler atlanır
+    private void migrateLegacy(Path legacyDir, int threads) throws IOException {
+        long start = System.nanoTime();
+        AtomicLong skipped = new AtomicLong();
+        ValueCodec legacyCodec = new ValueCodec(legacyDir, new StorageConfig());
+        System.out.println("Eski mesaj dizini sayfa dosyasına taşınıyor: " + legacyDir);
+
+        long read = LegacyMessageLoader.loadAll(legacyDir, threads, threads * 4, (id, content) -> {
+            if (index.containsKey(id)) {
+                skipped.incrementAndGet();
+                return;
+            }
+            if (!write(Collections.singletonMap(id, ByteBuffer.wrap(legacyCodec.decode(content))))) {
+                throw new IOException("yazılamadı");
+            }
+        });
+
+        pages.force(false);
+        blobs.force(false);
+        Path migratedDir = legacyDir.resolveSibling(legacyDir.getFileName() + ".migrated");
+        Files.move(legacyDir, migratedDir);
+        System.out.printf("Taşıma tamamlandı: %d mesaj yazıldı, %d atlandı, %d ms (eski dizin: %s)%n",
+                read - skipped.get(), skipped.get(), (System.nanoTime() - start) / 1_000_000, migratedDir);
+    }
+}
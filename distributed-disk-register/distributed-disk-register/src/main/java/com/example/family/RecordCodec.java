@@ -0,0 +1,51 @@
+package com.example.family;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+// Log kaydı: [id:int][length:int][crc32c:int][payload]
+public final class RecordCodec {
+
+    public static final int HEADER_SIZE = 12;
+
+    private RecordCodec() {
+    }
+
+    public static int recordSize(int payloadLength) {
+        return HEADER_SIZE + payloadLength;
+    }
+
+    public static ByteBuffer encode(int id, byte[] payload) {
+        return encode(id, ByteBuffer.wrap(payload));
+    }
+
+    // payload'ın position/limit'i değişmez
+    public static ByteBuffer encode(int id, ByteBuffer payload) {
+        ByteBuffer record = ByteBuffer.allocate(recordSize(payload.remaining()));
+        encode(record, id, payload);
+        record.flip();
+        return record;
+    }
+
+    public static void encode(ByteBuffer dst, int id, byte[] payload) {
+        encode(dst, id, ByteBuffer.wrap(payload));
+    }
+
+    public static void encode(ByteBuffer dst, int id, ByteBuffer payload) {
+        int length = payload.remaining();
+        dst.putInt(id);
+        dst.putInt(length);
+        dst.putInt(checksum(id, length, payload));
+        dst.put(payload.duplicate());
+    }
+
+    // crc, id ve uzunluğu da kapsar; böylece yarım yazılmış başlıklar da yakalanır
+    public static int checksum(int id, int length, ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer header = ByteBuffer.allocate(8).putInt(id).putInt(length);
+        header.flip();
+        crc.update(header);
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.family;
+
+// Index değeri tek bir long: [segment:20][offset:31][length:13]
+// length alanına sığmayan büyük kayıtlarda uzunluk kaydın başlığından okunur.
+public final class RecordPointer {
+
+    public static final int MAX_SEGMENT_ID = (1 << 20) - 1;
+    public static final long MAX_OFFSET = (1L << 31) - 1;
+    public static final int LENGTH_UNKNOWN = (1 << 13) - 1;
+
+    private RecordPointer() {
+    }
+
+    public static long pack(int segmentId, long offset, int length) {
+        int packedLength = length >= LENGTH_UNKNOWN ? LENGTH_UNKNOWN : length;
+        return ((long) segmentId << 44) | (offset << 13) | packedLength;
+    }
+
+    public static int segment(long pointer) {
+        return (int) (pointer >>> 44);
+    }
+
+    public static long offset(long pointer) {
+        return (pointer >>> 13) & MAX_OFFSET;
+    }
+
+    // Aynı id için iki pointer'dan logda daha sonra yazılmış olanı (segment, offset) döner
+    public static long newer(long a, long b) {
+        return compareLocation(a, b) >= 0 ? a : b;
+    }
+
+    // (segment, offset) sırası; logdaki fiziksel konuma göre sıralamak için
+    public static int compareLocation(long a, long b) {
+        return Long.compare(a >>> 13, b >>> 13);
+    }
+
+    // payload uzunluğu; bilinmiyorsa -1
+    public static int length(long pointer) {
+        int length = (int) (pointer & LENGTH_UNKNOWN);
+        return length == LENGTH_UNKNOWN ? -1 : length;
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.family;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Tek bir log dosyası; yazma sadece aktif segmente ve writer kilidi altında yapılır
+class Segment {
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final String BLOOM_SUFFIX = ".bloom";
+
+    interface RecordVisitor {
+        void visit(int id, long offset, byte[] payload) throws IOException;
+    }
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private volatile long size;
+    // kapalı (artık yazılmayan) segmentler okumada mmap ile eşlenebilir
+    private volatile boolean mapReads;
+    private volatile MappedByteBuffer mapped;
+
+    private Segment(int id, Path path, FileChannel channel) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    static Segment open(Path dir, int id) throws IOException {
+        Path path = dir.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(id, path, channel);
+    }
+
+    // yeni segment: dizin girdisi de fsync edilir, yoksa çökmede içine force edilmiş kayıtlarla birlikte kaybolabilir
+    static Segment create(Path dir, int id) throws IOException {
+        Segment segment = open(dir, id);
+        FileSync.directory(dir);
+        return segment;
+    }
+
+    static String fileName(int id) {
+        return String.format("%s%08d%s", PREFIX, id, SUFFIX);
+    }
+
+    static int parseId(String fileName) {
+        if (!fileName.startsWith(PREFIX) || !fileName.endsWith(SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(fileName.substring(PREFIX.length(), fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    // kapalı segmentteki id'lerin Bloom filtresi (segment-<id>.bloom)
+    Path bloomPath() {
+        return path.resolveSibling(String.format("%s%08d%s", PREFIX, id, BLOOM_SUFFIX));
+    }
+
+    long size() {
+        return size;
+    }
+
+    // Segment artık yazılmayacak; mapReads ise okumalar mmap üzerinden yapılır
+    void seal(boolean mapReads) {
+        this.mapReads = mapReads;
+    }
+
+    long append(ByteBuffer records) throws IOException {
+        long offset = size;
+        long position = offset;
+        while (records.hasRemaining()) {
+            position += channel.write(records, position);
+        }
+        size = position;
+        return offset;
+    }
+
+    // Dönen buffer mmap görünümü olabilir; array() yerine get() ile okunmalı
+    ByteBuffer read(long offset, int length) throws IOException {
+        MappedByteBuffer map = mapping();
+        if (map != null) {
+            if (offset + length > map.capacity()) throw new EOFException(path + " @" + offset);
+            // okuma page cache'ten yapılır: open/read/close yok, eksik sayfa sadece page fault
+            ByteBuffer view = map.duplicate();
+            view.position((int) offset).limit((int) offset + length);
+            return view.slice();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new EOFException(path + " @" + offset);
+            position += n;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    long scan(RecordVisitor visitor) throws IOException {
+        return scan(0, visitor);
+    }
+
+    // fromOffset'ten itibaren geçerli kayıtları sırayla dolaşır, son geçerli kaydın bittiği offset'i döner
+    long scan(long fromOffset, RecordVisitor visitor) throws IOException {
+        long end = size;
+        long offset = fromOffset;
+        try (InputStream raw = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ).position(fromOffset));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            while (offset + RecordCodec.HEADER_SIZE <= end) {
+                int recordId = in.readInt();
+                int length = in.readInt();
+                int crc = in.readInt();
+                if (length < 0 || length > end - offset - RecordCodec.HEADER_SIZE) break;
+
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (RecordCodec.checksum(recordId, length, ByteBuffer.wrap(payload)) != crc) break;
+
+                visitor.visit(recordId, offset, payload);
+                offset += RecordCodec.recordSize(length);
+            }
+        }
+        return offset;
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    private MappedByteBuffer mapping() throws IOException {
+        if (!mapReads) return null;
+        MappedByteBuffer map = mapped;
+        if (map == null) {
+            synchronized (this) {
+                map = mapped;
+                if (map == null) {
+                    map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    mapped = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+        mapped = null;
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(bloomPath());
+    }
+
+    void close() {
+        mapped = null;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.family;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Snapshot'ı yükler, ardından snapshot sonrası segmentleri paralel okuyarak index'i kurar.
+// Segmentler farklı sırada bitse de RecordPointer.newer en son yazılan kaydı seçtiği için sonuç aynıdır.
+final class SegmentLogRecovery {
+
+    private final Path snapshotFile;
+    private final List<Segment> segments;
+    private final IntLongIndex index;
+    private final int threads;
+    // bloom filtresi sayesinde fault-in sırasında okunmadan geçilen segment sayısı
+    private final AtomicLong bloomSkips;
+
+    private final CompletableFuture<Void> snapshotLoaded = new CompletableFuture<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    // yeniden eskiye sıralı
+    private volatile List<SegmentTask> tasks = Collections.emptyList();
+
+    private final AtomicLong totalBytes = new AtomicLong(1);
+    private final AtomicLong recoveredBytes = new AtomicLong();
+
+    SegmentLogRecovery(Path snapshotFile, List<Segment> segments, IntLongIndex index, int threads,
+                       AtomicLong bloomSkips) {
+        this.snapshotFile = snapshotFile;
+        this.segments = segments;
+        this.index = index;
+        this.threads = Math.max(1, threads);
+        this.bloomSkips = bloomSkips;
+    }
+
+    CompletableFuture<Void> start(String name) {
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+        return done;
+    }
+
+    int percent() {
+        if (done.isDone()) return 100;
+        return (int) Math.min(99, recoveredBytes.get() * 100 / totalBytes.get());
+    }
+
+    // aralık taraması gibi tam index gerektiren işler için recovery'nin bitmesi beklenir
+    void await() {
+        awaitQuietly(done);
+    }
+
+    // Recovery sürerken index'te olmayan bir id istenirse: snapshot beklenir, sonra segmentler
+    // yeniden eskiye doğru (henüz başlamadıysa bu thread'de) okunur ve id bulununca durulur.
+    // Bloom filtresi id'nin olmadığını söyleyen segmentler okunmaz; olmayan id diske gitmeden null döner.
+    long faultIn(int id) {
+        awaitQuietly(snapshotLoaded);
+        long pointer = index.get(id);
+        if (pointer != IntLongIndex.MISSING) return pointer;
+
+        for (SegmentTask task : tasks) {
+            if (!task.mightContain(id)) {
+                bloomSkips.incrementAndGet();
+                continue;
+            }
+            task.runOrJoin();
+            pointer = index.get(id);
+            if (pointer != IntLongIndex.MISSING) return pointer;
+        }
+        return IntLongIndex.MISSING;
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "RecoveryWorker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            IndexSnapshot snapshot = loadSnapshot();
+
+            List<SegmentTask> pending = new ArrayList<>();
+            long bytes = 0;
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                Segment segment = segments.get(i);
+                if (snapshot != null && segment.id() < snapshot.segmentId) break;
+                long from = snapshot != null && segment.id() == snapshot.segmentId ? snapshot.offset : 0;
+                pending.add(new SegmentTask(segment, from, i == segments.size() - 1,
+                        BloomFilter.load(segment.bloomPath())));
+                bytes += segment.size() - from;
+            }
+            totalBytes.set(Math.max(1, recoveredBytes.get() + bytes));
+            tasks = pending;
+            snapshotLoaded.complete(null);
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (SegmentTask task : pending) {
+                futures.add(CompletableFuture.runAsync(task::runOrJoin, pool));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+            System.out.printf("Segment log yüklendi: %d segment, %d mesaj (snapshot: %s, tail %d byte, %d thread, %d ms)%n",
+                    segments.size(), index.size(), snapshot != null ? snapshot.count + " kayıt" : "yok",
+                    bytes, threads, (System.nanoTime() - start) / 1_000_000);
+            done.complete(null);
+        } catch (Throwable e) {
+            System.err.println("Recovery hatası: " + e.getMessage());
+            snapshotLoaded.complete(null);
+            done.completeExceptionally(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private IndexSnapshot loadSnapshot() {
+        IntLongIndex loaded = new IntLongIndex();
+        IndexSnapshot snapshot = IndexSnapshot.load(snapshotFile, loaded);
+        if (snapshot == null) return null;
+
+        Segment covered = null;
+        for (Segment segment : segments) {
+            if (segment.id() == snapshot.segmentId) covered = segment;
+        }
+        if (covered == null || covered.size() < snapshot.offset) {
+            System.err.println("Index snapshot log ile uyuşmuyor, log baştan okunacak.");
+            return null;
+        }
+        index.ensureCapacity(index.size() + loaded.size());
+        loaded.forEach((id, pointer) -> index.merge(id, pointer, RecordPointer::newer));
+        recoveredBytes.addAndGet(sizeOf(snapshotFile));
+        return snapshot;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static void awaitQuietly(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException ignored) {
+        }
+    }
+
+    private final class SegmentTask {
+        final Segment segment;
+        final long from;
+        final boolean last;
+        // segmentin .bloom dosyası yoksa null
+        final BloomFilter bloom;
+        final AtomicBoolean started = new AtomicBoolean();
+        final CompletableFuture<Void> finished = new CompletableFuture<>();
+
+        SegmentTask(Segment segment, long from, boolean last, BloomFilter bloom) {
+            this.segment = segment;
+            this.from = from;
+            this.last = last;
+            this.bloom = bloom;
+        }
+
+        boolean mightContain(int id) {
+            return bloom == null || bloom.mightContain(id);
+        }
+
+        void runOrJoin() {
+            if (started.compareAndSet(false, true)) {
+                try {
+                    recover();
+                    finished.complete(null);
+                } catch (Exception e) {
+                    System.err.printf("Segment %d okunamadı: %s%n", segment.id(), e.getMessage());
+                    finished.completeExceptionally(e);
+                }
+            }
+            awaitQuietly(finished);
+        }
+
+        private void recover() throws Exception {
+            int segmentId = segment.id();
+            long validEnd = segment.scan(from, (recordId, offset, payload) ->
+                    index.merge(recordId, RecordPointer.pack(segmentId, offset, payload.length), RecordPointer::newer));
+            if (validEnd < segment.size()) {
+                if (last) {
+                    // son segmentteki yarım kalmış yazma (crash) kesilir
+                    System.err.printf("Segment %d: %d byte bozuk kuyruk kesiliyor%n",
+                            segmentId, segment.size() - validEnd);
+                    segment.truncate(validEnd);
+                } else {
+                    System.err.printf("Segment %d: %d. byte sonrası okunamadı%n", segmentId, validEnd);
+                }
+            }
+            recoveredBytes.addAndGet(segment.size() - from);
+        }
+    }
+}
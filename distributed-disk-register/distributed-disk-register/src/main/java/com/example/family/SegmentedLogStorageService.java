@@ -0,0 +1,789 @@
+package com.example.family;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+// Her mesaj için ayrı dosya açmak yerine kayıtları sıralı segment dosyalarına ekler
+public class SegmentedLogStorageService implements IStorageService {
+
+    private final Path storageDir;
+    private final long maxSegmentBytes;
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    // id -> RecordPointer (segment, offset, length)
+    private final IntLongIndex index = new IntLongIndex(1024, true);
+    private final Object writeLock = new Object();
+    private final MessageCache cache;
+    private final ValueCodec codec;
+    // kapalı segmentler okumada mmap ile eşlenir (READ_MMAP=false ise pread)
+    private final boolean mmapReads;
+    private Segment active;
+
+    // DURABLE=true: put çağrıları kuyrukta toplanır, tek write + tek force ile diske kalıcı yazılır
+    private final boolean durable;
+    private final int groupCommitMaxBatch;
+    private final BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+
+    private final String name;
+    private final boolean lazyRecovery;
+    private final int recoveryThreads;
+    // recovery sürerken dolu; bittiğinde null
+    private volatile SegmentLogRecovery recovery;
+    private List<Segment> segmentsToRecover = Collections.emptyList();
+
+    // canlı kayıt oranı bu eşiğin altına düşen kapalı segmentler yeniden yazılıp silinir
+    private final double compactionLiveRatio;
+    private final IoThrottle compactionThrottle;
+    private final AtomicLong compactionRuns = new AtomicLong();
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong compactionMillis = new AtomicLong();
+
+    // kapalı segmentlerin yanına segment-<id>.bloom yazılır; lazy recovery'de olmayan id'ler için
+    // segmentler okunmadan geçilir
+    private final double bloomFpp;
+    private final ScheduledExecutorService bloomWriter;
+    private final AtomicLong bloomSkips = new AtomicLong();
+
+    // Scrubber canlı kayıtları arka planda okuyup checksum'larını doğrular. Bozuk kayıt (okumada ya da
+    // scrub'da) index'ten çıkarılır ve quarantine.log'a yazılır; bozuk veri hiçbir zaman döndürülmez.
+    private final IoThrottle scrubThrottle;
+    private final Path quarantineLog;
+    private final AtomicLong scrubRuns = new AtomicLong();
+    private final AtomicLong scrubbedBytes = new AtomicLong();
+    private final AtomicLong corruptRecords = new AtomicLong();
+
+    private final Path snapshotFile;
+    // son snapshot'tan beri yapılan yazma sayısı; sıfırsa yeni snapshot yazılmaz
+    private final AtomicLong writesSinceSnapshot = new AtomicLong();
+
+    public SegmentedLogStorageService(int port, StorageConfig config) {
+        this.name = String.valueOf(port);
+        this.storageDir = Paths.get("segments_" + port);
+        this.snapshotFile = storageDir.resolve("index.snapshot");
+        this.quarantineLog = storageDir.resolve("quarantine.log");
+        // offset, pointer içinde 31 bit tutulduğu için segment boyutu 2GB ile sınırlı
+        this.maxSegmentBytes = Math.min(config.getLong("SEGMENT_MAX_BYTES", 64L * 1024 * 1024),
+                RecordPointer.MAX_OFFSET);
+        this.cache = MessageCache.fromConfig(config);
+        this.codec = new ValueCodec(storageDir, config);
+        this.mmapReads = config.getBoolean("READ_MMAP", true);
+        this.durable = config.getBoolean("DURABLE", false);
+        this.groupCommitMaxBatch = config.getInt("GROUP_COMMIT_MAX_BATCH", 512);
+        this.compactionLiveRatio = config.getDouble("COMPACTION_LIVE_RATIO", 0.5);
+        this.compactionThrottle = new IoThrottle(config.getLong("COMPACTION_BYTES_PER_SECOND", 8L * 1024 * 1024));
+        this.recoveryThreads = config.getInt("RECOVERY_THREADS", Runtime.getRuntime().availableProcessors());
+        this.bloomFpp = config.getDouble("BLOOM_FPP", 0.01);
+        this.bloomWriter = backgroundScheduler("SegmentBloom-" + port);
+        this.scrubThrottle = new IoThrottle(config.getLong("SCRUB_BYTES_PER_SECOND", 4L * 1024 * 1024));
+
+        // Eski messages_<port> dizini tek geçişte segment loga taşınır. Logda zaten olan id'ler
+        // atlandığı için index'in tam olması gerekir; bu açılışta recovery eager yapılır.
+        Path legacyDir = Paths.get("messages_" + port);
+        boolean migrate = config.getBoolean("MIGRATE_LEGACY", false) && Files.isDirectory(legacyDir);
+        this.lazyRecovery = !migrate && "lazy".equalsIgnoreCase(config.getString("RECOVERY", "eager"));
+        try {
+            Files.createDirectories(storageDir);
+            openSegments();
+            if (migrate) {
+                migrateLegacy(legacyDir);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Segment dizini açılamadı: " + storageDir, e);
+        }
+
+        if (!lazyRecovery) {
+            writeMissingBlooms();
+        }
+
+        if (durable) {
+            Thread committer = new Thread(this::groupCommitLoop, "GroupCommit-" + port);
+            committer.setDaemon(true);
+            committer.start();
+        }
+
+        long snapshotInterval = config.getLong("SNAPSHOT_INTERVAL_SECONDS", 60);
+        if (snapshotInterval > 0) {
+            backgroundScheduler("IndexSnapshot-" + port).scheduleWithFixedDelay(this::snapshotIfDirty,
+                    snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
+
+        long compactionInterval = config.getLong("COMPACTION_INTERVAL_SECONDS", 30);
+        if (compactionInterval > 0) {
+            backgroundScheduler("Compactor-" + port).scheduleWithFixedDelay(this::compactIfNeeded,
+                    compactionInterval, compactionInterval, TimeUnit.SECONDS);
+        }
+
+        long scrubInterval = config.getLong("SCRUB_INTERVAL_SECONDS", 3600);
+        if (scrubInterval > 0) {
+            backgroundScheduler("Scrubber-" + port).scheduleWithFixedDelay(this::scrub,
+                    scrubInterval, scrubInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void put(int id, String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        if (write(id, RecordCodec.encode(id, codec.encode(ByteBuffer.wrap(payload))))) {
+            cache.put(id, payload);
+        }
+    }
+
+    @Override
+    public String get(int id) {
+        byte[] cached = cache.get(id);
+        if (cached != null) return new String(cached, StandardCharsets.UTF_8);
+
+        byte[] payload = readPayload(id);
+        if (payload == null) return null;
+
+        cache.put(id, payload);
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    // payload String'e çevrilmeden loga yazılır; cache'teki eski değer düşürülür
+    @Override
+    public void putBytes(int id, ByteBuffer payload) {
+        if (write(id, RecordCodec.encode(id, codec.encode(payload)))) {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public ByteBuffer getBytes(int id) {
+        byte[] cached = cache.get(id);
+        if (cached != null) return ByteBuffer.wrap(cached).asReadOnlyBuffer();
+
+        byte[] payload = readPayload(id);
+        if (payload == null) return null;
+
+        cache.put(id, payload);
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
+    // Tüm kayıtlar tek buffer'da tek write ile eklenir; DURABLE modda batch için tek force yapılır
+    @Override
+    public void putAll(Map<Integer, ByteBuffer> messages) {
+        if (messages.isEmpty()) return;
+        List<PendingWrite> batch = new ArrayList<>(messages.size());
+        for (Map.Entry<Integer, ByteBuffer> entry : messages.entrySet()) {
+            batch.add(new PendingWrite(entry.getKey(),
+                    RecordCodec.encode(entry.getKey(), codec.encode(entry.getValue()))));
+        }
+        try {
+            appendAll(batch, durable);
+        } catch (IOException e) {
+            if (durable) {
+                throw new UncheckedIOException("Kalıcı toplu yazma hatası (" + batch.size() + " kayıt)", e);
+            }
+            System.err.println("Toplu yazma hatası (" + batch.size() + " kayıt): " + e.getMessage());
+            return;
+        }
+        for (PendingWrite write : batch) {
+            cache.invalidate(write.id);
+        }
+    }
+
+    // Cache'te olmayanlar logdaki konumlarına göre sıralanıp okunur; böylece diske sıralı erişilir
+    @Override
+    public Map<Integer, ByteBuffer> getAll(int[] ids) {
+        ByteBuffer[] found = new ByteBuffer[ids.length];
+        long[] pointers = new long[ids.length];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            byte[] cached = cache.get(ids[i]);
+            if (cached != null) {
+                found[i] = ByteBuffer.wrap(cached).asReadOnlyBuffer();
+                continue;
+            }
+            pointers[i] = lookup(ids[i]);
+            if (pointers[i] != IntLongIndex.MISSING) misses.add(i);
+        }
+
+        misses.sort((a, b) -> RecordPointer.compareLocation(pointers[a], pointers[b]));
+        for (int i : misses) {
+            byte[] payload = readPayload(ids[i], pointers[i]);
+            if (payload == null) continue;
+            cache.put(ids[i], payload);
+            found[i] = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+
+        Map<Integer, ByteBuffer> result = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (found[i] != null) result.put(ids[i], found[i]);
+        }
+        return result;
+    }
+
+    // id'ler sıralı index'ten alınır; kayıtlar getAll'da segment/offset sırasıyla okunur
+    @Override
+    public Map<Integer, ByteBuffer> scan(int fromId, int toId, int limit) {
+        SegmentLogRecovery pending = recovery;
+        if (pending != null) pending.await();
+        return getAll(index.keysInRange(fromId, toId, limit));
+    }
+
+    @Override
+    public int getCount() {
+        return index.size();
+    }
+
+    @Override
+    public void startRecovery() {
+        if (lazyRecovery && recovery == null && !segmentsToRecover.isEmpty()) {
+            beginRecovery().whenComplete((ignored, error) -> {
+                recovery = null;
+                writeMissingBlooms();
+            });
+        }
+    }
+
+    @Override
+    public int getRecoveryPercent() {
+        SegmentLogRecovery pending = recovery;
+        return pending == null ? 100 : pending.percent();
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("segments", (long) segments.size());
+        stats.put("index.bytes", index.memoryBytes());
+        stats.put("compaction.runs", compactionRuns.get());
+        stats.put("compaction.segments", compactedSegments.get());
+        stats.put("compaction.reclaimedBytes", reclaimedBytes.get());
+        stats.put("compaction.millis", compactionMillis.get());
+        stats.put("bloom.skips", bloomSkips.get());
+        stats.put("scrub.runs", scrubRuns.get());
+        stats.put("scrub.bytes", scrubbedBytes.get());
+        stats.put("corrupt.records", corruptRecords.get());
+        codec.stats(stats);
+        cache.stats(stats);
+        return stats;
+    }
+
+    private long lookup(int id) {
+        long pointer = index.get(id);
+        SegmentLogRecovery pending = recovery;
+        if (pointer == IntLongIndex.MISSING && pending != null) {
+            pointer = pending.faultIn(id);
+        }
+        return pointer;
+    }
+
+    private byte[] readPayload(int id) {
+        return readPayload(id, lookup(id));
+    }
+
+    private byte[] readPayload(int id, long pointer) {
+        // compaction kaydı taşıyıp eski segmenti silmiş olabilir; index'teki yeni yerden tekrar okunur
+        for (int attempt = 0; pointer != IntLongIndex.MISSING && attempt < 3; attempt++) {
+            Segment segment = segments.get(RecordPointer.segment(pointer));
+            try {
+                if (segment != null) {
+                    byte[] stored = readRecord(segment, pointer, id);
+                    return stored == null ? null : codec.decode(stored);
+                }
+            } catch (ClosedChannelException e) {
+                // okuma sırasında segment kapatıldı
+            } catch (IOException e) {
+                System.err.printf("Okuma hatası (ID %d): %s%n", id, e.getMessage());
+                return null;
+            }
+            long current = index.get(id);
+            if (current == pointer) return null;
+            pointer = current;
+        }
+        return null;
+    }
+
+    // başlık veya checksum tutmazsa kayıt karantinaya alınır ve null döner
+    private byte[] readRecord(Segment segment, long pointer, int id) throws IOException {
+        long offset = RecordPointer.offset(pointer);
+        int knownLength = RecordPointer.length(pointer);
+        // uzunluk pointer'da varsa başlık + payload tek okumada gelir
+        ByteBuffer record = segment.read(offset,
+                knownLength >= 0 ? RecordCodec.recordSize(knownLength) : RecordCodec.HEADER_SIZE);
+        int storedId = record.getInt();
+        int length = record.getInt();
+        int crc = record.getInt();
+        if (storedId != id || length < 0 || (knownLength >= 0 && length != knownLength)
+                || offset + RecordCodec.recordSize(length) > segment.size()) {
+            quarantine(id, pointer, "başlık tutmuyor");
+            return null;
+        }
+        if (knownLength < 0) {
+            record = segment.read(offset + RecordCodec.HEADER_SIZE, length);
+        }
+        if (RecordCodec.checksum(id, length, record) != crc) {
+            quarantine(id, pointer, "checksum hatalı");
+            return null;
+        }
+        byte[] payload = new byte[length];
+        record.get(payload);
+        return payload;
+    }
+
+    // Bozuk kaydı index'ten çıkarır (GET artık bulunamadı döner) ve quarantine.log'a yazar.
+    // Bu arada aynı id için yeni bir SET geldiyse index'teki yeni sürüme dokunulmaz.
+    private void quarantine(int id, long pointer, String reason) {
+        synchronized (writeLock) {
+            if (index.get(id) != pointer) return;
+            index.remove(id);
+        }
+        cache.invalidate(id);
+        corruptRecords.incrementAndGet();
+        writesSinceSnapshot.incrementAndGet();
+
+        String line = String.format("%s id=%d segment=%d offset=%d reason=%s%n", Instant.now(), id,
+                RecordPointer.segment(pointer), RecordPointer.offset(pointer), reason);
+        System.err.print("Bozuk kayıt karantinaya alındı: " + line);
+        try {
+            Files.writeString(quarantineLog, line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("quarantine.log yazılamadı: " + e.getMessage());
+        }
+    }
+
+    // DURABLE modda hata çağırana fırlatılır; diğer modda loglanıp false döner
+    private boolean write(int id, ByteBuffer record) {
+        if (durable) {
+            putDurable(id, record);
+            return true;
+        }
+        try {
+            append(id, record);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Yazma hatası (ID " + id + "): " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void append(int id, ByteBuffer record) throws IOException {
+        synchronized (writeLock) {
+            if (active.size() >= maxSegmentBytes) {
+                roll();
+            }
+            long offset = active.append(record);
+            index.put(id, RecordPointer.pack(active.id(), offset, record.limit() - RecordCodec.HEADER_SIZE));
+        }
+        writesSinceSnapshot.incrementAndGet();
+    }
+
+    // Batch diske force edilene kadar bekler; hata olursa çağırana (Store RPC) iletilir
+    private void putDurable(int id, ByteBuffer record) {
+        PendingWrite write = new PendingWrite(id, record);
+        pendingWrites.add(write);
+        try {
+            write.done.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException
+                    ? new UncheckedIOException("Kalıcı yazma hatası (ID " + id + ")", (IOException) cause)
+                    : new IllegalStateException("Kalıcı yazma hatası (ID " + id + ")", cause);
+        }
+    }
+
+    private void groupCommitLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(pendingWrites.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            pendingWrites.drainTo(batch, groupCommitMaxBatch - 1);
+
+            try {
+                appendAll(batch, true);
+                for (PendingWrite write : batch) {
+                    write.done.complete(null);
+                }
+            } catch (Exception e) {
+                System.err.println("Group commit hatası (" + batch.size() + " kayıt): " + e.getMessage());
+                for (PendingWrite write : batch) {
+                    write.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void appendAll(List<PendingWrite> batch, boolean force) throws IOException {
+        int bytes = 0;
+        for (PendingWrite write : batch) {
+            bytes += write.record.remaining();
+        }
+        ByteBuffer records = ByteBuffer.allocate(bytes);
+        for (PendingWrite write : batch) {
+            records.put(write.record.duplicate());
+        }
+        records.flip();
+
+        synchronized (writeLock) {
+            if (active.size() >= maxSegmentBytes) {
+                roll();
+            }
+            long offset = active.append(records);
+            if (force) {
+                active.force();
+            }
+            for (PendingWrite write : batch) {
+                int recordSize = write.record.remaining();
+                index.put(write.id, RecordPointer.pack(active.id(), offset, recordSize - RecordCodec.HEADER_SIZE));
+                offset += recordSize;
+            }
+        }
+        writesSinceSnapshot.addAndGet(batch.size());
+    }
+
+    private void roll() throws IOException {
+        if (active.id() >= RecordPointer.MAX_SEGMENT_ID) {
+            throw new IOException("Segment id alanı doldu: " + active.id());
+        }
+        // kapanan segment diske indirilir; compaction sonrası sadece aktif segmenti force etmek yeterli olur
+        active.force();
+        active.seal(mmapReads);
+        Segment sealed = active;
+        bloomWriter.execute(() -> writeBloom(sealed));
+        active = Segment.create(storageDir, active.id() + 1);
+        segments.put(active.id(), active);
+    }
+
+    // Kapalı segment bir kez taranıp id'leri Bloom dosyasına yazılır
+    private void writeBloom(Segment segment) {
+        try {
+            IntStream.Builder ids = IntStream.builder();
+            segment.scan((id, offset, payload) -> ids.add(id));
+            int[] all = ids.build().toArray();
+            BloomFilter bloom = BloomFilter.create(all.length, bloomFpp);
+            for (int id : all) {
+                bloom.add(id);
+            }
+            bloom.write(segment.bloomPath());
+            // bu arada compaction segmenti silmişse dosya yetim kalmasın
+            if (segments.get(segment.id()) != segment) {
+                Files.deleteIfExists(segment.bloomPath());
+            }
+        } catch (IOException e) {
+            System.err.printf("Segment %d için bloom yazılamadı: %s%n", segment.id(), e.getMessage());
+        }
+    }
+
+    // recovery bittikten sonra: eski sürümden kalan veya yarım kalmış bloom dosyaları tamamlanır
+    private void writeMissingBlooms() {
+        for (Segment segment : segments.values()) {
+            if (segment != active && !Files.exists(segment.bloomPath())) {
+                bloomWriter.execute(() -> writeBloom(segment));
+            }
+        }
+    }
+
+    private void compactIfNeeded() {
+        // recovery bitmeden canlılık hesabı eksik index'e göre yapılır
+        if (recovery != null) return;
+        try {
+            IntLongIndex liveBytes = liveBytesBySegment();
+            int activeId = active.id();
+            List<Segment> candidates = new ArrayList<>();
+            for (Segment segment : segments.values()) {
+                if (segment.id() == activeId) continue;
+                long live = Math.max(0, liveBytes.get(segment.id()));
+                // boş kapalı segment (ör. lazy açılışta açılıp hiç yazılmadan kapanan) de silinir;
+                // yoksa her restart'ta bir tane daha birikir
+                if (segment.size() == 0 || live < segment.size() * compactionLiveRatio) candidates.add(segment);
+            }
+            if (candidates.isEmpty()) return;
+
+            compactionRuns.incrementAndGet();
+            for (Segment segment : candidates) {
+                compact(segment);
+            }
+        } catch (Exception e) {
+            System.err.println("Compaction hatası: " + e.getMessage());
+        }
+    }
+
+    // segment id -> canlı kayıtların toplam byte'ı
+    private IntLongIndex liveBytesBySegment() throws IOException {
+        IntLongIndex liveBytes = new IntLongIndex(segments.size());
+        List<Long> unknownLength = new ArrayList<>();
+        index.forEach((id, pointer) -> {
+            int length = RecordPointer.length(pointer);
+            if (length < 0) {
+                unknownLength.add(pointer);
+            } else {
+                liveBytes.merge(RecordPointer.segment(pointer), RecordCodec.recordSize(length), Long::sum);
+            }
+        });
+        // büyük kayıtların uzunluğu pointer'a sığmaz, başlıktan okunur
+        for (long pointer : unknownLength) {
+            Segment segment = segments.get(RecordPointer.segment(pointer));
+            if (segment == null) continue;
+            ByteBuffer header = segment.read(RecordPointer.offset(pointer), RecordCodec.HEADER_SIZE);
+            header.getInt();
+            liveBytes.merge(segment.id(), RecordCodec.recordSize(header.getInt()), Long::sum);
+        }
+        return liveBytes;
+    }
+
+    // Segmentteki canlı kayıtları aktif segmente taşır, sonra segmenti siler
+    private void compact(Segment segment) throws IOException {
+        long start = System.nanoTime();
+        int segmentId = segment.id();
+        long before = segment.size();
+        long[] moved = new long[1];
+
+        long scanned = segment.scan((id, offset, payload) -> {
+            int recordSize = RecordCodec.recordSize(payload.length);
+            compactionThrottle.acquire(recordSize);
+            if (relocate(id, segmentId, offset, payload)) {
+                moved[0] += recordSize;
+            }
+        });
+
+        // scan ilk bozuk kayıtta durur; arkasındaki canlı kayıtlar tek tek okunup taşınır,
+        // bozuk olanlar readRecord içinde karantinaya alınır
+        if (scanned < before) {
+            List<Long> rest = new ArrayList<>();
+            index.forEach((id, pointer) -> {
+                if (RecordPointer.segment(pointer) == segmentId && RecordPointer.offset(pointer) >= scanned) {
+                    rest.add((RecordPointer.offset(pointer) << 32) | (id & 0xffffffffL));
+                }
+            });
+            Collections.sort(rest);
+            for (long packed : rest) {
+                int id = (int) packed;
+                long pointer = index.get(id);
+                if (RecordPointer.segment(pointer) != segmentId) continue;
+                byte[] payload = readRecord(segment, pointer, id);
+                if (payload != null && relocate(id, segmentId, RecordPointer.offset(pointer), payload)) {
+                    moved[0] += RecordCodec.recordSize(payload.length);
+                }
+            }
+        }
+
+        // taşınan kopyalar kalıcı olmadan ve yeni snapshot yazılmadan eski segment silinmez
+        active.force();
+        writeSnapshot();
+        segments.remove(segmentId);
+        segment.delete();
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        compactedSegments.incrementAndGet();
+        reclaimedBytes.addAndGet(before - moved[0]);
+        compactionMillis.addAndGet(millis);
+        System.out.printf("Compaction: segment %d, %d byte geri kazanıldı, %d byte taşındı, %d ms%n",
+                segmentId, before - moved[0], moved[0], millis);
+    }
+
+    // Kayıt hâlâ bu konumdaki sürümse sona yeniden yazılır. Kontrol ve yazma aynı kilit altında
+    // yapılır; aksi halde araya giren yeni bir SET'in üzerine eski değer logda daha yeni görünürdü.
+    private boolean relocate(int id, int segmentId, long offset, byte[] payload) throws IOException {
+        synchronized (writeLock) {
+            long current = index.get(id);
+            if (current == IntLongIndex.MISSING
+                    || RecordPointer.segment(current) != segmentId || RecordPointer.offset(current) != offset) {
+                return false;
+            }
+            if (active.size() >= maxSegmentBytes) {
+                roll();
+            }
+            long newOffset = active.append(RecordCodec.encode(id, payload));
+            index.put(id, RecordPointer.pack(active.id(), newOffset, payload.length));
+            return true;
+        }
+    }
+
+    // Index'teki her canlı kaydı segment sırasıyla okuyup checksum'ını doğrular
+    private void scrub() {
+        // lazy recovery sürerken index eksik; kayıtlar fault-in ile zaten okunurken doğrulanır
+        if (recovery != null) return;
+        long start = System.nanoTime();
+        long[] bytes = new long[1];
+        long corruptBefore = corruptRecords.get();
+
+        // segment id -> (offset << 32 | id) listesi; segment içinde diskteki sırayla okunur
+        Map<Integer, List<Long>> bySegment = new TreeMap<>();
+        index.forEach((id, pointer) -> bySegment
+                .computeIfAbsent(RecordPointer.segment(pointer), k -> new ArrayList<>())
+                .add((RecordPointer.offset(pointer) << 32) | (id & 0xffffffffL)));
+
+        try {
+            for (Map.Entry<Integer, List<Long>> entry : bySegment.entrySet()) {
+                Segment segment = segments.get(entry.getKey());
+                if (segment == null) continue;
+                List<Long> entries = entry.getValue();
+                Collections.sort(entries);
+                try {
+                    for (long packed : entries) {
+                        int id = (int) packed;
+                        long pointer = index.get(id);
+                        // okuma sırasında kayıt güncellendi veya taşındı
+                        if (pointer == IntLongIndex.MISSING || RecordPointer.segment(pointer) != segment.id()
+                                || RecordPointer.offset(pointer) != packed >>> 32) continue;
+                        int size = RecordCodec.recordSize(Math.max(0, RecordPointer.length(pointer)));
+                        scrubThrottle.acquire(size);
+                        readRecord(segment, pointer, id);
+                        bytes[0] += size;
+                    }
+                } catch (ClosedChannelException e) {
+                    // segment compaction ile silindi; kayıtlar yeni segmentte sonraki turda doğrulanır
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Scrub hatası: " + e.getMessage());
+        }
+
+        scrubRuns.incrementAndGet();
+        scrubbedBytes.addAndGet(bytes[0]);
+        long corrupt = corruptRecords.get() - corruptBefore;
+        System.out.printf("Scrub: %d byte doğrulandı, %d bozuk kayıt, %d ms%n",
+                bytes[0], corrupt, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static ScheduledExecutorService backgroundScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void snapshotIfDirty() {
+        // index tamamlanmadan snapshot yazılırsa eksik kayıtlar kalıcı olarak kaybolur
+        if (recovery != null) return;
+        long writes = writesSinceSnapshot.get();
+        if (writes == 0) return;
+        try {
+            writeSnapshot();
+            writesSinceSnapshot.addAndGet(-writes);
+        } catch (Exception e) {
+            System.err.println("Index snapshot yazılamadı: " + e.getMessage());
+        }
+    }
+
+    void writeSnapshot() throws IOException {
+        Segment segment;
+        long offset;
+        ByteBuffer entries;
+        // index ve log konumu aynı anda yakalanır; sonraki yazmalar açılışta tail olarak okunur
+        synchronized (writeLock) {
+            segment = active;
+            offset = active.size();
+            entries = IndexSnapshot.capture(index);
+        }
+        // snapshot'ın gösterdiği kayıtlar diske inmeden snapshot yayınlanmaz
+        segment.force();
+        IndexSnapshot.write(snapshotFile, segment.id(), offset, entries);
+    }
+
+    private void openSegments() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(storageDir)) {
+            for (Path path : stream) {
+                int segmentId = Segment.parseId(path.getFileName().toString());
+                if (segmentId >= 0) ids.add(segmentId);
+            }
+        }
+        Collections.sort(ids);
+        List<Segment> existing = new ArrayList<>();
+        for (int segmentId : ids) {
+            Segment segment = Segment.open(storageDir, segmentId);
+            segments.put(segmentId, segment);
+            existing.add(segment);
+        }
+        segmentsToRecover = existing;
+        for (int i = 0; i < existing.size(); i++) {
+            // eager açılışta son segment aktif kalır ve yazılmaya devam eder
+            if (lazyRecovery || i < existing.size() - 1) existing.get(i).seal(mmapReads);
+        }
+
+        if (lazyRecovery) {
+            // yazmalar hemen başlayabilsin diye yeni bir segment açılır; eski segmentlere
+            // (bozuk kuyruk kesilene kadar) yazılmaz ve arka planda okunur
+            int nextId = existing.isEmpty() ? 1 : existing.get(existing.size() - 1).id() + 1;
+            active = Segment.create(storageDir, nextId);
+            segments.put(active.id(), active);
+            return;
+        }
+
+        if (!existing.isEmpty()) {
+            beginRecovery().join();
+            recovery = null;
+        }
+        active = segments.isEmpty() ? Segment.create(storageDir, 1) : segments.lastEntry().getValue();
+        segments.put(active.id(), active);
+        // yeniden yazılmaya açılan segmentin eski bloom'u artık eksik kalır
+        Files.deleteIfExists(active.bloomPath());
+    }
+
+    private void migrateLegacy(Path legacyDir) throws IOException {
+        long start = System.nanoTime();
+        AtomicLong skipped = new AtomicLong();
+        System.out.println("Eski mesaj dizini segment loga taşınıyor: " + legacyDir);
+        // buffered motorun sıkıştırdığı dosyalar kendi dizinindeki sözlüklerle çözülür
+        ValueCodec legacyCodec = new ValueCodec(legacyDir, new StorageConfig());
+
+        long read = LegacyMessageLoader.loadAll(legacyDir, recoveryThreads, recoveryThreads * 4, (id, content) -> {
+            // logda aynı id'nin daha yeni bir kopyası varsa eski dosya yazılmaz
+            if (index.containsKey(id)) {
+                skipped.incrementAndGet();
+                return;
+            }
+            append(id, RecordCodec.encode(id, codec.encode(ByteBuffer.wrap(legacyCodec.decode(content)))));
+        });
+
+        active.force();
+        writeSnapshot();
+        writesSinceSnapshot.set(0);
+        Path migratedDir = legacyDir.resolveSibling(legacyDir.getFileName() + ".migrated");
+        Files.move(legacyDir, migratedDir);
+        System.out.printf("Taşıma tamamlandı: %d mesaj yazıldı, %d atlandı, %d ms (eski dizin: %s)%n",
+                read - skipped.get(), skipped.get(), (System.nanoTime() - start) / 1_000_000, migratedDir);
+    }
+
+    private CompletableFuture<Void> beginRecovery() {
+        recovery = new SegmentLogRecovery(snapshotFile, segmentsToRecover, index, recoveryThreads, bloomSkips);
+        segmentsToRecover = Collections.emptyList();
+        return recovery.start("Recovery-" + name);
+    }
+
+    private static final class PendingWrite {
+        final int id;
+        final ByteBuffer record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWrite(int id, ByteBuffer record) {
+            this.id = id;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.family;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Cache değerleri için heap dışı (direct) bellek. Bellek slabSize'lık slab'lara bölünür; her slab ilk
+// kullanıldığında bir boyut sınıfına atanır ve o sınıfın sabit boyutlu parçalarına (chunk) ayrılır.
+// Boşalan chunk'lar sınıfın free list'ine döner ve aynı sınıftaki sonraki değer için yeniden kullanılır.
+// Milyonlarca küçük mesaj heap'te byte[] olarak yaşamaz; GC bu belleği taramaz ve taşımaz.
+// Thread-safe değildir; MessageCache kilidi altında kullanılır.
+final class SlabArena {
+
+    static final long NONE = -1;
+
+    // her chunk'ın başında değerin uzunluğu tutulur
+    private static final int LENGTH_PREFIX = Integer.BYTES;
+    private static final int MIN_CHUNK = 64;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final int[] chunkSizes;
+
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    // slab index -> boyut sınıfı ve dolu chunk sayısı
+    private int[] slabClasses = new int[16];
+    private int[] slabUsed = new int[16];
+    // tamamen boşalıp sınıfından geri alınan slab'lar; başka bir sınıfa verilebilir
+    private int[] emptySlabs = new int[16];
+    private int emptyCount;
+    private long reassigned;
+    // sınıf başına: henüz hiç verilmemiş parçaların olduğu son slab ve sıradaki offset
+    private final int[] bumpSlab;
+    private final int[] bumpOffset;
+    // sınıf başına serbest chunk handle'ları (yığın)
+    private final long[][] freeLists;
+    private final int[] freeCounts;
+
+    private final long[] usedChunks;
+    private long usedPayloadBytes;
+
+    SlabArena(long capacityBytes, int slabSize, double growthFactor) {
+        this.slabSize = Math.max(MIN_CHUNK * 2, slabSize);
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, Math.max(1, capacityBytes / this.slabSize));
+
+        List<Integer> sizes = new ArrayList<>();
+        double factor = Math.max(1.05, growthFactor);
+        for (double size = MIN_CHUNK; size < this.slabSize / 2.0; size *= factor) {
+            int aligned = ((int) size + 7) & ~7;
+            if (sizes.isEmpty() || aligned > sizes.get(sizes.size() - 1)) sizes.add(aligned);
+        }
+        sizes.add(this.slabSize);
+        this.chunkSizes = sizes.stream().mapToInt(Integer::intValue).toArray();
+
+        int classes = chunkSizes.length;
+        this.bumpSlab = new int[classes];
+        this.bumpOffset = new int[classes];
+        this.freeLists = new long[classes][16];
+        this.freeCounts = new int[classes];
+        this.usedChunks = new long[classes];
+        Arrays.fill(bumpSlab, -1);
+    }
+
+    // değerin sığacağı en küçük sınıf; hiçbirine sığmıyorsa -1
+    int sizeClass(int length) {
+        int needed = length + LENGTH_PREFIX;
+        int lo = 0;
+        int hi = chunkSizes.length - 1;
+        if (needed > chunkSizes[hi]) return -1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (chunkSizes[mid] < needed) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    int chunkSize(long handle) {
+        return chunkSizes[classOf(handle)];
+    }
+
+    int classOf(long handle) {
+        return slabClasses[(int) (handle >>> 32)];
+    }
+
+    // yer yoksa NONE; çağıran aynı sınıftan bir değer boşaltıp tekrar deneyebilir
+    long allocate(byte[] value) {
+        int sizeClass = sizeClass(value.length);
+        if (sizeClass < 0) return NONE;
+        long handle = takeChunk(sizeClass);
+        if (handle == NONE) return NONE;
+        ByteBuffer slab = slabs.get((int) (handle >>> 32));
+        slab.putInt((int) handle, value.length);
+        slab.position((int) handle + LENGTH_PREFIX);
+        slab.put(value);
+        usedChunks[sizeClass]++;
+        slabUsed[(int) (handle >>> 32)]++;
+        usedPayloadBytes += value.length;
+        return handle;
+    }
+
+    byte[] read(long handle) {
+        ByteBuffer slab = slabs.get((int) (handle >>> 32));
+        byte[] value = new byte[slab.getInt((int) handle)];
+        slab.position((int) handle + LENGTH_PREFIX);
+        slab.get(value);
+        return value;
+    }
+
+    void free(long handle) {
+        int slabIndex = (int) (handle >>> 32);
+        int sizeClass = slabClasses[slabIndex];
+        usedPayloadBytes -= slabs.get(slabIndex).getInt((int) handle);
+        usedChunks[sizeClass]--;
+        long[] free = freeLists[sizeClass];
+        if (freeCounts[sizeClass] == free.length) {
+            free = freeLists[sizeClass] = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCounts[sizeClass]++] = handle;
+        if (--slabUsed[slabIndex] == 0 && bumpSlab[sizeClass] != slabIndex) {
+            reclaim(slabIndex, sizeClass);
+        }
+    }
+
+    // Boş slab'ın chunk'ları sınıfın free list'inden çıkarılır. Böylece bir sınıfa bir kez verilen
+    // bellek sonsuza kadar o sınıfta kalmaz (değer boyutları zamanla değişirse).
+    private void reclaim(int slabIndex, int sizeClass) {
+        long[] free = freeLists[sizeClass];
+        int kept = 0;
+        for (int i = 0; i < freeCounts[sizeClass]; i++) {
+            if ((int) (free[i] >>> 32) != slabIndex) free[kept++] = free[i];
+        }
+        freeCounts[sizeClass] = kept;
+        if (emptyCount == emptySlabs.length) emptySlabs = Arrays.copyOf(emptySlabs, emptyCount * 2);
+        emptySlabs[emptyCount++] = slabIndex;
+    }
+
+    void stats(Map<String, Long> out) {
+        long slabBytes = (long) slabs.size() * slabSize;
+        long chunkBytes = 0;
+        long freeChunkBytes = 0;
+        for (int i = 0; i < chunkSizes.length; i++) {
+            chunkBytes += usedChunks[i] * chunkSizes[i];
+            freeChunkBytes += (long) freeCounts[i] * chunkSizes[i];
+        }
+        out.put("slab.count", (long) slabs.size());
+        out.put("slab.bytes", slabBytes);
+        out.put("slab.usedBytes", usedPayloadBytes);
+        // ayrılan slab belleğinin ne kadarında gerçekten değer var
+        out.put("slab.utilizationPercent", slabBytes == 0 ? 0 : usedPayloadBytes * 100 / slabBytes);
+        // dolu chunk'ların değer dışında kalan kısmı (sınıf yuvarlaması + uzunluk alanı)
+        out.put("slab.internalFragmentationPercent", chunkBytes == 0 ? 0 : (chunkBytes - usedPayloadBytes) * 100 / chunkBytes);
+        // free list'te bekleyen, başka sınıfa verilemeyen chunk'lar
+        out.put("slab.freeChunkBytes", freeChunkBytes);
+        out.put("slab.empty", (long) emptyCount);
+        out.put("slab.reassigned", reassigned);
+    }
+
+    private long takeChunk(int sizeClass) {
+        if (freeCounts[sizeClass] > 0) {
+            return freeLists[sizeClass][--freeCounts[sizeClass]];
+        }
+        int chunk = chunkSizes[sizeClass];
+        if (bumpSlab[sizeClass] < 0 || bumpOffset[sizeClass] + chunk > slabSize) {
+            int slabIndex;
+            if (emptyCount > 0) {
+                slabIndex = emptySlabs[--emptyCount];
+                reassigned++;
+            } else {
+                if (slabs.size() >= maxSlabs) return NONE;
+                slabIndex = slabs.size();
+                slabs.add(ByteBuffer.allocateDirect(slabSize));
+                if (slabIndex == slabClasses.length) {
+                    slabClasses = Arrays.copyOf(slabClasses, slabIndex * 2);
+                    slabUsed = Arrays.copyOf(slabUsed, slabIndex * 2);
+                }
+            }
+            // önceki bump slab'ı artık dolu; içindeki her chunk boşalırsa geri alınabilir
+            int previous = bumpSlab[sizeClass];
+            slabClasses[slabIndex] = sizeClass;
+            bumpSlab[sizeClass] = slabIndex;
+            bumpOffset[sizeClass] = 0;
+            if (previous >= 0 && slabUsed[previous] == 0) reclaim(previous, sizeClass);
+        }
+        long handle = ((long) bumpSlab[sizeClass] << 32) | bumpOffset[sizeClass];
+        bumpOffset[sizeClass] += chunk;
+        return handle;
+    }
+}
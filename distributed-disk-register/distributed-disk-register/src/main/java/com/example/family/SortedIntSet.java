@@ -0,0 +1,132 @@
+package com.example.family;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Sıralı int kümesi (aralık taramaları için). Değerler üst 16 bitlerine göre parçalara ayrılır; seyrek
+// parçalar sıralı char[] olarak, ARRAY_MAX'ı aşan yoğun parçalar 65536 bitlik bitmap olarak tutulur.
+// Ardışık id'lerde eleman başına ~1 bit, dağınık id'lerde ~2 byte yer kaplar; Integer nesnesi oluşmaz.
+// Thread-safe değildir; IntLongIndex kilidi altında kullanılır.
+final class SortedIntSet {
+
+    private static final int ARRAY_MAX = 4096;
+
+    // parça anahtarı: değer >> 16 (işaretli kaydırma, negatif id'lerde de sıra korunur)
+    private final TreeMap<Integer, Chunk> chunks = new TreeMap<>();
+    private int size;
+
+    boolean add(int value) {
+        Chunk chunk = chunks.computeIfAbsent(value >> 16, key -> new Chunk());
+        if (!chunk.add((char) value)) return false;
+        size++;
+        return true;
+    }
+
+    boolean remove(int value) {
+        Chunk chunk = chunks.get(value >> 16);
+        if (chunk == null || !chunk.remove((char) value)) return false;
+        if (chunk.count == 0) chunks.remove(value >> 16);
+        size--;
+        return true;
+    }
+
+    void clear() {
+        chunks.clear();
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // [from, to] aralığındaki değerler artan sırada, en fazla limit tane
+    int[] range(int from, int to, int limit) {
+        if (from > to || limit <= 0) return new int[0];
+        int[] out = new int[Math.min(limit, Math.min(size, 1024))];
+        int n = 0;
+        Iterator<Map.Entry<Integer, Chunk>> it = chunks.subMap(from >> 16, true, to >> 16, true).entrySet().iterator();
+        while (it.hasNext() && n < limit) {
+            Map.Entry<Integer, Chunk> entry = it.next();
+            int high = entry.getKey();
+            int lo = high == from >> 16 ? from & 0xFFFF : 0;
+            int hi = high == to >> 16 ? to & 0xFFFF : 0xFFFF;
+            Chunk chunk = entry.getValue();
+            for (int low = chunk.ceiling(lo); low >= 0 && low <= hi && n < limit; low = chunk.ceiling(low + 1)) {
+                if (n == out.length) out = Arrays.copyOf(out, (int) Math.min(limit, out.length * 2L));
+                out[n++] = high << 16 | low;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static final class Chunk {
+        // bits null ise değerler values'ta sıralı
+        char[] values = new char[4];
+        long[] bits;
+        int count;
+
+        boolean add(char low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) != 0) return false;
+                bits[low >>> 6] |= mask;
+                count++;
+                return true;
+            }
+            int pos = Arrays.binarySearch(values, 0, count, low);
+            if (pos >= 0) return false;
+            pos = -pos - 1;
+            if (count == ARRAY_MAX) {
+                toBitmap();
+                return add(low);
+            }
+            if (count == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, count * 2));
+            System.arraycopy(values, pos, values, pos + 1, count - pos);
+            values[pos] = low;
+            count++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long mask = 1L << low;
+                if ((bits[low >>> 6] & mask) == 0) return false;
+                bits[low >>> 6] &= ~mask;
+                count--;
+                return true;
+            }
+            int pos = Arrays.binarySearch(values, 0, count, low);
+            if (pos < 0) return false;
+            System.arraycopy(values, pos + 1, values, pos, count - pos - 1);
+            count--;
+            return true;
+        }
+
+        // low'dan büyük veya eşit ilk değer; yoksa -1
+        int ceiling(int low) {
+            if (low > 0xFFFF) return -1;
+            if (bits == null) {
+                int pos = Arrays.binarySearch(values, 0, count, (char) low);
+                if (pos < 0) pos = -pos - 1;
+                return pos < count ? values[pos] : -1;
+            }
+            int word = low >>> 6;
+            long current = bits[word] & (-1L << low);
+            while (current == 0) {
+                if (++word == bits.length) return -1;
+                current = bits[word];
+            }
+            return word << 6 | Long.numberOfTrailingZeros(current);
+        }
+
+        private void toBitmap() {
+            bits = new long[1024];
+            for (int i = 0; i < count; i++) {
+                bits[values[i] >>> 6] |= 1L << values[i];
+            }
+            values = null;
+        }
+    }
+}
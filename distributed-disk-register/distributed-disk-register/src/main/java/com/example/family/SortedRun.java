@@ -0,0 +1,394 @@
+package com.example.family;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+
+// LSM motorunun değişmez, id'ye göre sıralı run dosyası (run-<id>.sst):
+// [kayıtlar (RecordCodec)][key bloğu: int * count][sparse index: (int id, long offset) * n][bloom][footer]
+// footer: [keyBlockOffset:long][sparseOffset:long][bloomOffset:long][count:int][sparseCount:int][version:int][magic:int]
+// (version 1 dosyalarda bloom ve bloomOffset yoktur)
+// Bellekte sparse index ve bloom filtresi tutulur; GET run'da olmayan id'ler için diske gitmez, olanlar için tek blok okur.
+final class SortedRun {
+
+    private static final String PREFIX = "run-";
+    private static final String SUFFIX = ".sst";
+    private static final int MAGIC = 0x4C534D52; // "LSMR"
+    private static final int VERSION = 2;
+    private static final int FOOTER_V1_SIZE = 2 * Long.BYTES + 4 * Integer.BYTES;
+    private static final int FOOTER_SIZE = 3 * Long.BYTES + 4 * Integer.BYTES;
+    private static final int SPARSE_ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+    // blok: en fazla bu kadar kayıt veya bu kadar byte; hangisi önce dolarsa
+    private static final int BLOCK_RECORDS = 64;
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final long keyBlockOffset;
+    private final int count;
+    private final int[] sparseKeys;
+    private final long[] sparseOffsets;
+    // version 1 run'larda null
+    private final BloomFilter bloom;
+
+    private SortedRun(int id, Path path, FileChannel channel, long keyBlockOffset, int count,
+                      int[] sparseKeys, long[] sparseOffsets, BloomFilter bloom) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.keyBlockOffset = keyBlockOffset;
+        this.count = count;
+        this.sparseKeys = sparseKeys;
+        this.sparseOffsets = sparseOffsets;
+        this.bloom = bloom;
+    }
+
+    static String fileName(int id) {
+        return String.format("%s%08d%s", PREFIX, id, SUFFIX);
+    }
+
+    static int parseId(String fileName) {
+        if (!fileName.startsWith(PREFIX) || !fileName.endsWith(SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(fileName.substring(PREFIX.length(), fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static SortedRun open(Path dir, int id) throws IOException {
+        Path path = dir.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_V1_SIZE) throw new IOException("Run dosyası eksik: " + path);
+            ByteBuffer trailer = read(channel, size - 2 * Integer.BYTES, 2 * Integer.BYTES);
+            int version = trailer.getInt();
+            if (trailer.getInt() != MAGIC || version < 1 || version > VERSION) {
+                throw new IOException("Run formatı tanınmadı: " + path);
+            }
+            int footerSize = version == 1 ? FOOTER_V1_SIZE : FOOTER_SIZE;
+            if (size < footerSize) throw new IOException("Run dosyası eksik: " + path);
+            ByteBuffer footer = read(channel, size - footerSize, footerSize);
+            long keyBlockOffset = footer.getLong();
+            long sparseOffset = footer.getLong();
+            long bloomOffset = version == 1 ? -1 : footer.getLong();
+            int count = footer.getInt();
+            int sparseCount = footer.getInt();
+
+            BloomFilter bloom = null;
+            if (bloomOffset >= 0) {
+                bloom = BloomFilter.readFrom(read(channel, bloomOffset, (int) (size - footerSize - bloomOffset)));
+            }
+
+            ByteBuffer sparse = read(channel, sparseOffset, sparseCount * SPARSE_ENTRY_SIZE);
+            int[] sparseKeys = new int[sparseCount];
+            long[] sparseOffsets = new long[sparseCount];
+            for (int i = 0; i < sparseCount; i++) {
+                sparseKeys[i] = sparse.getInt();
+                sparseOffsets[i] = sparse.getLong();
+            }
+            return new SortedRun(id, path, channel, keyBlockOffset, count, sparseKeys, sparseOffsets, bloom);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    int count() {
+        return count;
+    }
+
+    // false ise id bu run'da kesinlikle yok
+    boolean mightContain(int recordId) {
+        return bloom == null || bloom.mightContain(recordId);
+    }
+
+    long bloomBytes() {
+        return bloom == null ? 0 : bloom.sizeBytes();
+    }
+
+    long size() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // id'nin düşebileceği tek bloğu okur; run'da yoksa null, kaydın crc'si tutmazsa IOException
+    byte[] get(int recordId) throws IOException {
+        int block = floorBlock(recordId);
+        if (block < 0) return null;
+        long from = sparseOffsets[block];
+        long to = block + 1 < sparseOffsets.length ? sparseOffsets[block + 1] : keyBlockOffset;
+        ByteBuffer records = read(channel, from, (int) (to - from));
+        while (records.remaining() >= RecordCodec.HEADER_SIZE) {
+            int storedId = records.getInt();
+            int length = records.getInt();
+            int crc = records.getInt();
+            if (storedId > recordId) return null;
+            if (storedId == recordId) {
+                byte[] payload = new byte[length];
+                records.get(payload);
+                if (RecordCodec.checksum(storedId, length, ByteBuffer.wrap(payload)) != crc) {
+                    throw new IOException("Run " + id + ": bozuk kayıt (ID " + recordId + ")");
+                }
+                return payload;
+            }
+            records.position(records.position() + length);
+        }
+        return null;
+    }
+
+    // açılışta id kümesini kurmak için; kayıtlar okunmaz, sadece key bloğu
+    void forEachKey(IntConsumer consumer) throws IOException {
+        long position = keyBlockOffset;
+        int remaining = count;
+        while (remaining > 0) {
+            int chunk = Math.min(remaining, 16 * 1024);
+            ByteBuffer keys = read(channel, position, chunk * Integer.BYTES);
+            for (int i = 0; i < chunk; i++) {
+                consumer.accept(keys.getInt());
+            }
+            position += (long) chunk * Integer.BYTES;
+            remaining -= chunk;
+        }
+    }
+
+    Cursor cursor() {
+        return new Cursor(0);
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    // recordId'den küçük veya eşit son sparse girdisi
+    private int floorBlock(int recordId) {
+        int low = 0;
+        int high = sparseKeys.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sparseKeys[mid] <= recordId) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new EOFException("run @" + offset);
+            position += n;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Run'lar yeniden eskiye verilir; aynı id için en yeni run'daki değer yazılır
+    static SortedRun merge(Path dir, int id, List<SortedRun> newestFirst, IoThrottle throttle,
+                           double bloomFpp) throws IOException {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>((a, b) ->
+                a.id != b.id ? Integer.compare(a.id, b.id) : Integer.compare(a.rank, b.rank));
+        for (int rank = 0; rank < newestFirst.size(); rank++) {
+            Cursor cursor = newestFirst.get(rank).new Cursor(rank);
+            if (cursor.next()) heap.add(cursor);
+        }
+
+        try (Writer writer = new Writer(dir, id, bloomFpp)) {
+            while (!heap.isEmpty()) {
+                Cursor top = heap.poll();
+                int recordId = top.id;
+                throttle.acquire(RecordCodec.recordSize(top.payload.length));
+                writer.add(recordId, top.payload);
+                if (top.next()) heap.add(top);
+                // eski run'lardaki aynı id'li kayıtlar atlanır
+                while (!heap.isEmpty() && heap.peek().id == recordId) {
+                    Cursor older = heap.poll();
+                    if (older.next()) heap.add(older);
+                }
+            }
+            return writer.finish();
+        }
+    }
+
+    // Kayıtları id sırasıyla okur; paylaşılan kanaldan konumlu okuma yapar
+    final class Cursor {
+        private final int rank;
+        private ByteBuffer buffer = ByteBuffer.allocate(BLOCK_BYTES).flip();
+        private long position;
+        int id;
+        byte[] payload;
+
+        private Cursor(int rank) {
+            this.rank = rank;
+        }
+
+        boolean next() throws IOException {
+            if (!buffer.hasRemaining() && position >= keyBlockOffset) return false;
+            ensure(RecordCodec.HEADER_SIZE);
+            id = buffer.getInt();
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            ensure(length);
+            payload = new byte[length];
+            buffer.get(payload);
+            if (RecordCodec.checksum(id, length, ByteBuffer.wrap(payload)) != crc) {
+                throw new IOException("Run " + SortedRun.this.id + ": bozuk kayıt (ID " + id + ")");
+            }
+            return true;
+        }
+
+        // buffer'da en az n byte olana kadar dosyadan okur
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining() >= n) return;
+            if (buffer.capacity() < n) {
+                buffer = ByteBuffer.allocate(n).put(buffer).flip();
+            }
+            buffer.compact();
+            long limit = keyBlockOffset;
+            while (buffer.position() < n) {
+                int want = (int) Math.min(buffer.remaining(), limit - position);
+                if (want <= 0) throw new EOFException("Run " + SortedRun.this.id + " beklenmedik şekilde bitti");
+                ByteBuffer slice = buffer.duplicate();
+                slice.limit(slice.position() + want);
+                int read = channel.read(slice, position);
+                if (read < 0) throw new EOFException("Run " + SortedRun.this.id + " beklenmedik şekilde bitti");
+                buffer.position(buffer.position() + read);
+                position += read;
+            }
+            buffer.flip();
+        }
+    }
+
+    // Sıralı kayıtları geçici dosyaya yazar; finish ile dosya yerine taşınıp açılır
+    static final class Writer implements Closeable {
+        private final Path dir;
+        private final int id;
+        private final Path tmp;
+        private final double bloomFpp;
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private long offset;
+        private int[] keys = new int[1024];
+        private int count;
+        private int[] sparseKeys = new int[64];
+        private long[] sparseOffsets = new long[64];
+        private int sparseCount;
+        private long blockStart;
+        private int blockRecords;
+        private boolean finished;
+
+        Writer(Path dir, int id, double bloomFpp) throws IOException {
+            this.dir = dir;
+            this.id = id;
+            this.bloomFpp = bloomFpp;
+            this.tmp = dir.resolve(fileName(id) + ".tmp");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        }
+
+        // id'ler kesin artan sırada verilmeli
+        void add(int recordId, byte[] payload) throws IOException {
+            if (count > 0 && recordId <= keys[count - 1]) {
+                throw new IllegalArgumentException("Run kayıtları sıralı değil: " + recordId);
+            }
+            if (count == 0 || blockRecords >= BLOCK_RECORDS || offset - blockStart >= BLOCK_BYTES) {
+                if (sparseCount == sparseKeys.length) {
+                    sparseKeys = Arrays.copyOf(sparseKeys, sparseCount * 2);
+                    sparseOffsets = Arrays.copyOf(sparseOffsets, sparseCount * 2);
+                }
+                sparseKeys[sparseCount] = recordId;
+                sparseOffsets[sparseCount++] = offset;
+                blockStart = offset;
+                blockRecords = 0;
+            }
+            if (count == keys.length) keys = Arrays.copyOf(keys, count * 2);
+            keys[count++] = recordId;
+            blockRecords++;
+
+            out.writeInt(recordId);
+            out.writeInt(payload.length);
+            out.writeInt(RecordCodec.checksum(recordId, payload.length, ByteBuffer.wrap(payload)));
+            out.write(payload);
+            offset += RecordCodec.recordSize(payload.length);
+        }
+
+        SortedRun finish() throws IOException {
+            long keyBlockOffset = offset;
+            for (int i = 0; i < count; i++) {
+                out.writeInt(keys[i]);
+            }
+            long sparseOffset = keyBlockOffset + (long) count * Integer.BYTES;
+            for (int i = 0; i < sparseCount; i++) {
+                out.writeInt(sparseKeys[i]);
+                out.writeLong(sparseOffsets[i]);
+            }
+            long bloomOffset = sparseOffset + (long) sparseCount * SPARSE_ENTRY_SIZE;
+            BloomFilter bloom = BloomFilter.create(count, bloomFpp);
+            for (int i = 0; i < count; i++) {
+                bloom.add(keys[i]);
+            }
+            bloom.writeTo(out);
+            out.writeLong(keyBlockOffset);
+            out.writeLong(sparseOffset);
+            out.writeLong(bloomOffset);
+            out.writeInt(count);
+            out.writeInt(sparseCount);
+            out.writeInt(VERSION);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+            out.close();
+            finished = true;
+
+            Files.move(tmp, dir.resolve(fileName(id)), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            // flush sonrası WAL'lar silinir; run'ın dizin girdisi ondan önce kalıcı olmalı
+            FileSync.directory(dir);
+            return open(dir, id);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) return;
+            out.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.family;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+// storage.conf içindeki KEY=VALUE ayarlarını okur
+public class StorageConfig {
+
+    private final Properties props = new Properties();
+
+    public static StorageConfig load(String path) {
+        StorageConfig config = new StorageConfig();
+        try (FileReader reader = new FileReader(path, StandardCharsets.UTF_8)) {
+            config.props.load(reader);
+        } catch (IOException e) {
+            System.out.println("⚠ " + path + " bulunamadı, varsayılan depolama ayarları kullanılıyor.");
+        }
+        return config;
+    }
+
+    // dosya yerine koddan ayar vermek için (benchmark vb.)
+    public StorageConfig set(String key, Object value) {
+        props.setProperty(key, String.valueOf(value));
+        return this;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = props.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Geçersiz ayar " + key + "=" + value + ", varsayılan " + defaultValue + " kullanılıyor.");
+            return defaultValue;
+        }
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        if (value == null) return defaultValue;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Geçersiz ayar " + key + "=" + value + ", varsayılan " + defaultValue + " kullanılıyor.");
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
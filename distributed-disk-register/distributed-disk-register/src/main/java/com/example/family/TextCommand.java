@@ -0,0 +1,347 @@
+package com.example.family;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// Gateway komutunun byte seviyesinde çözümü; text satırı (parse) ya da binary frame (parseFrame) aynı
+// alanlara çözülür ve komutu çalıştıran kod protokolü bilmez.
+// Text: eski yolun (readLine -> trim -> split(" ", 3) -> toUpperCase -> parseInt) anlamı korunur ama
+// String/dizi oluşturulmaz: komut adı ASCII olarak büyük/küçük harf duyarsız karşılaştırılır, id
+// baytlardan okunur, SET payload'ı satırın bir dilimidir ve replikasyona kopyalanmadan verilir. Metin
+// sadece chat için çözülür.
+// Çok anahtarlı komutlar: "MGET <id> <id> ..." tek satırdır; "MSET <n>" başlığını n tane "<id> <mesaj>"
+// satırı izler (mesajlarda boşluk olabildiği için), gateway bu satırları entries ile ekler.
+// parse aynı nesneyle tekrar çağrılabilir; alanlar her seferinde sıfırlanır.
+final class TextCommand {
+
+    // binary frame'lerde opcode olarak da kullanılır
+    static final int EMPTY = 0;
+    static final int SET = 1;
+    static final int GET = 2;
+    static final int SCAN = 3;
+    static final int MSET = 4;
+    static final int MGET = 5;
+    // chat / broadcast
+    static final int OTHER = 6;
+    // çözülemeyen MSET başlığı ya da binary frame; cevap ERROR'dur
+    static final int INVALID = 7;
+
+    private static final int[] NO_IDS = new int[0];
+    private static final long[] NO_KEYS = new long[0];
+    private static final ByteBuffer[] NO_VALUES = new ByteBuffer[0];
+
+    private ByteBuffer line;
+    // trim edilmiş satırın (ya da frame'in) sınırları (line içindeki mutlak index'ler)
+    private int start;
+    private int end;
+    private int type;
+    private int id;
+    private boolean hasId;
+    // ikinci boşluktan sonrası; yoksa -1
+    private int payloadStart;
+    // binary MGET/SCAN'in sayıları; text'te args() satırdan çözer
+    private int[] args;
+    // MSET kayıtları; id'si veya mesajı olmayan kaydın değeri null
+    private int[] entryIds = NO_IDS;
+    private ByteBuffer[] entryValues = NO_VALUES;
+    private String invalidReason;
+
+    TextCommand parse(ByteBuffer line) {
+        if (!trim(line)) {
+            type = EMPTY;
+            return this;
+        }
+
+        int nameEnd = indexOfSpace(start, end);
+        if (matches("SET", start, nameEnd)) {
+            type = SET;
+        } else if (matches("GET", start, nameEnd)) {
+            type = GET;
+        } else if (matches("MSET", start, nameEnd)) {
+            // id alanı satır sayısıdır
+            type = MSET;
+        } else if (matches("MGET", start, nameEnd)) {
+            type = MGET;
+            return this;
+        } else if (matches("SCAN", start, nameEnd)) {
+            type = SCAN;
+            return this;
+        } else {
+            type = OTHER;
+            return this;
+        }
+
+        // split(" ", 3): ikinci parça bir sonraki boşluğa kadar, üçüncüsü satırın geri kalanı
+        if (nameEnd < end) parseIdAndPayload(nameEnd + 1);
+        if (type == MSET && (!hasId || id < 0)) return invalid("MSET <satir sayisi> bekleniyor");
+        return this;
+    }
+
+    // MSET satırı: "<id> <mesaj>", SET'in argümanları gibi çözülür
+    TextCommand parseEntry(ByteBuffer line) {
+        type = SET;
+        if (trim(line)) parseIdAndPayload(start);
+        return this;
+    }
+
+    // Binary frame: [opcode:byte][gövde], sayılar big-endian int. Opcode'lar tip sabitleriyle aynı:
+    //  SET  [id][payload]                 GET  [id]
+    //  MSET ([id][uzunluk][payload])*     MGET [id]*          SCAN [from][to][limit]
+    // Payload'lar frame'in dilimidir.
+    TextCommand parseFrame(ByteBuffer frame) {
+        reset(frame, frame.position(), frame.limit());
+        int body = start + 1;
+        int length = end - body;
+        switch (frame.get(start)) {
+            case SET:
+                if (length < 4) return invalid("SET frame'i kisa");
+                type = SET;
+                id = frame.getInt(body);
+                hasId = true;
+                payloadStart = body + 4;
+                return this;
+            case GET:
+                if (length != 4) return invalid("GET frame'i 4 byte id bekler");
+                type = GET;
+                id = frame.getInt(body);
+                hasId = true;
+                return this;
+            case MGET:
+                if (length % 4 != 0) return invalid("MGET frame'i 4 byte id'lerden olusur");
+                type = MGET;
+                args = readInts(body, length / 4);
+                return this;
+            case SCAN:
+                if (length != 12) return invalid("SCAN frame'i from, to, limit bekler");
+                type = SCAN;
+                args = readInts(body, 3);
+                return this;
+            case MSET:
+                type = MSET;
+                return parseFrameEntries(body);
+            default:
+                return invalid("bilinmeyen opcode " + frame.get(start));
+        }
+    }
+
+    int type() {
+        return type;
+    }
+
+    boolean hasId() {
+        return hasId;
+    }
+
+    int id() {
+        return id;
+    }
+
+    String invalidReason() {
+        return invalidReason;
+    }
+
+    // MSET başlığını izleyen satır sayısı; başka komutlarda ve binary MSET'te 0
+    int entryLines() {
+        return type == MSET && hasId ? id : 0;
+    }
+
+    // text MSET: başlığı izleyen satırlar kayıtlara çözülür
+    void entries(List<ByteBuffer> lines) {
+        entryIds = new int[lines.size()];
+        entryValues = new ByteBuffer[lines.size()];
+        TextCommand entry = new TextCommand();
+        for (int i = 0; i < entryIds.length; i++) {
+            entry.parseEntry(lines.get(i));
+            if (entry.hasId() && entry.hasPayload()) {
+                entryIds[i] = entry.id();
+                entryValues[i] = entry.payload();
+            }
+        }
+    }
+
+    int[] entryIds() {
+        return entryIds;
+    }
+
+    ByteBuffer[] entryValues() {
+        return entryValues;
+    }
+
+    // MGET'in id'leri (istek sırasıyla, tekrarlar dahil) ya da SCAN'in sayıları; biri sayı değilse null
+    int[] args() {
+        if (args != null) return args;
+        int[] values = new int[16];
+        int count = 0;
+        int i = indexOfSpace(start, end);
+        while (i < end) {
+            if (line.get(i) == ' ') {
+                i++;
+                continue;
+            }
+            int tokenEnd = indexOfSpace(i, end);
+            if (!parseInt(i, tokenEnd)) return null;
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count++] = id;
+            i = tokenEnd;
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    boolean hasPayload() {
+        return payloadStart >= 0;
+    }
+
+    // satırın kopyası değil görünümü (position..limit); satır buffer'ı komut bitene kadar değiştirilmez
+    ByteBuffer payload() {
+        if (payloadStart < 0) return null;
+        return view(payloadStart, end);
+    }
+
+    // trim edilmiş satır (chat için)
+    String text() {
+        byte[] bytes = new byte[end - start];
+        view(start, end).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // id'ye dokunan komutlar (SET/GET/MSET/MGET) gateway'de id anahtarlarıyla sıralanır; SCAN, chat ve
+    // geçersiz komutlar sırasızdır ve bağlantıda tek başına çalışır
+    boolean ordered() {
+        return type == SET || type == GET || type == MSET || type == MGET;
+    }
+
+    // Komutun dokunduğu id'ler, sıralı ve tekrarsız (gateway anahtar kuyruklarına bu sırayla girer).
+    // MSET'te entries'ten sonra çağrılır; değeri olmayan kayıtlar yazılmadığı için anahtar almaz.
+    long[] orderingKeys() {
+        int[] ids;
+        if (type == SET || type == GET) {
+            return hasId ? new long[] {id} : NO_KEYS;
+        } else if (type == MSET) {
+            ids = new int[entryIds.length];
+            int count = 0;
+            for (int i = 0; i < entryIds.length; i++) {
+                if (entryValues[i] != null) ids[count++] = entryIds[i];
+            }
+            ids = Arrays.copyOf(ids, count);
+        } else if (type == MGET) {
+            ids = args();
+            if (ids == null) return NO_KEYS;
+        } else {
+            return NO_KEYS;
+        }
+        return Arrays.stream(ids).sorted().distinct().asLongStream().toArray();
+    }
+
+    // satırı alır ve String.trim gibi <= ' ' olan baytları atar (UTF-8'de çok baytlı karakterler >= 0x80);
+    // satır boşsa false
+    private boolean trim(ByteBuffer line) {
+        int from = line.position();
+        int to = line.limit();
+        while (from < to && (line.get(from) & 0xFF) <= ' ') from++;
+        while (to > from && (line.get(to - 1) & 0xFF) <= ' ') to--;
+        reset(line, from, to);
+        return from < to;
+    }
+
+    private void reset(ByteBuffer line, int from, int to) {
+        this.line = line;
+        start = from;
+        end = to;
+        hasId = false;
+        payloadStart = -1;
+        args = null;
+        entryIds = NO_IDS;
+        entryValues = NO_VALUES;
+        invalidReason = null;
+    }
+
+    private TextCommand invalid(String reason) {
+        type = INVALID;
+        hasId = false;
+        invalidReason = reason;
+        return this;
+    }
+
+    private ByteBuffer view(int from, int to) {
+        ByteBuffer view = line.duplicate();
+        view.limit(to).position(from);
+        return view;
+    }
+
+    private int[] readInts(int from, int count) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = line.getInt(from + 4 * i);
+        }
+        return values;
+    }
+
+    // önce kayıtlar sayılır (ve sınırlar doğrulanır), sonra dizilere dilimlenir
+    private TextCommand parseFrameEntries(int body) {
+        int count = 0;
+        for (int pos = body; pos < end; count++) {
+            if (end - pos < 8) return invalid("MSET kaydi kisa");
+            int length = line.getInt(pos + 4);
+            if (length < 0 || length > end - pos - 8) return invalid("MSET kaydi frame disina tasiyor");
+            pos += 8 + length;
+        }
+        entryIds = new int[count];
+        entryValues = new ByteBuffer[count];
+        int pos = body;
+        for (int i = 0; i < count; i++) {
+            int length = line.getInt(pos + 4);
+            entryIds[i] = line.getInt(pos);
+            entryValues[i] = view(pos + 8, pos + 8 + length);
+            pos += 8 + length;
+        }
+        return this;
+    }
+
+    private void parseIdAndPayload(int idStart) {
+        int idEnd = indexOfSpace(idStart, end);
+        hasId = parseInt(idStart, idEnd);
+        if (idEnd < end) payloadStart = idEnd + 1;
+    }
+
+    private int indexOfSpace(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line.get(i) == ' ') return i;
+        }
+        return to;
+    }
+
+    private boolean matches(String name, int from, int to) {
+        if (to - from != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            int b = line.get(from + i);
+            if (b >= 'a' && b <= 'z') b -= 'a' - 'A';
+            if (b != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Integer.parseInt ile aynı kurallar: isteğe bağlı +/- ve en az bir rakam, taşma geçersiz
+    private boolean parseInt(int from, int to) {
+        if (from == to) return false;
+        boolean negative = false;
+        int i = from;
+        byte first = line.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == to) return false;
+        }
+        // Integer.parseInt gibi negatif tarafta biriktirilir; MIN_VALUE da sığar
+        long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = line.get(i) - '0';
+            if (digit < 0 || digit > 9) return false;
+            result = result * 10 - digit;
+            if (result < limit) return false;
+        }
+        id = (int) (negative ? result : -result);
+        return true;
+    }
+}
@@ -0,0 +1,681 @@
+package com.example.family;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.protobuf.ByteString;
+
+// Liderin satır tabanlı text gateway'i. Bağlantı başına thread yok: sabit sayıda I/O thread'i kendi
+// Selector'ı ile non-blocking soketleri okur, satırlara böler ve cevapları yazar. Komutlar (replikasyon
+// RPC'leri bloklar) ayrı worker havuzunda çalışır. Pipelining: bir bağlantıdan arka arkaya gelen komutlar
+// pipelineDepth'e kadar aynı anda çalışır; aynı id'ye dokunan komutlar (bağlantılar arası da, MSET/MGET
+// her id'si için) geliş sırasıyla çalışır, cevaplar her zaman istek sırasıyla yazılır. Boştaki bir bağlantı sadece soket +
+// küçük bir nesne tutar.
+// Aynı portta binary protokol: bağlantının ilk byte'ı BINARY_MAGIC ise istekler satır yerine
+// [uzunluk:int][opcode][gövde] frame'leridir (bkz. TextCommand.parseFrame); payload'lar ham byte'tır,
+// satır sonu içerebilir. Cevap frame'i: [uzunluk:int][durum][id:int][veri], uzunluk durumdan itibaren.
+// ERROR'da veri UTF-8 mesaj, END'de id alanı sonuç sayısıdır. Komutlar iki protokolde de aynı
+// CommandHandler'da çalışır; sonuçları Reply bağlantının protokolüne göre yazar.
+final class TextGateway {
+
+    // Komut sonuçları. Text'te satır biçimi komuta göre seçilir (GET: "OK <mesaj>", MGET/SCAN:
+    // "OK <id> <mesaj>", MSET: "OK <id>"), binary'de her sonuç bir frame'dir.
+    interface Reply {
+        void stored(int id);
+
+        void value(int id, ByteString data);
+
+        void notFound(int id);
+
+        void error(String message);
+
+        // çok sonuçlu komutların (MSET/MGET/SCAN) sonu
+        void end(int count);
+
+        void broadcastSent();
+    }
+
+    interface CommandHandler {
+        void handle(TextCommand command, Reply reply);
+    }
+
+    // UTF-8'de hiç geçmeyen byte; text komutu bununla başlayamaz
+    static final byte BINARY_MAGIC = (byte) 0xFF;
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_NOT_FOUND = 1;
+    static final byte STATUS_ERROR = 2;
+    static final byte STATUS_END = 3;
+
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+    // işlenmeyi bekleyen satır sayısı ya da byte'ı bunu aşarsa bağlantıdan okuma durur
+    private static final int MAX_QUEUED_LINES = 1024;
+    private static final long MAX_QUEUED_BYTES = 4L << 20;
+    // MSET başlığının bildirebileceği en fazla satır; aşan bağlantı kapatılır. Bloğun toplam byte'ı da
+    // binary MSET frame'i gibi maxLineBytes ile sınırlı
+    private static final int MAX_ENTRY_LINES = 1 << 16;
+    // yazılmayı bekleyen cevap byte'ı bunu aşarsa bağlantıdan yeni komut alınmaz; anahtarsız uzun cevaplı
+    // komutun (SCAN) worker'ı en fazla OUTPUT_STALL_MILLIS bekler, istemci o sürede okumazsa bağlantı kapatılır
+    private static final long MAX_PENDING_OUTPUT = 1 << 20;
+    private static final long OUTPUT_STALL_MILLIS = 10_000;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final int port;
+    private final int maxLineBytes;
+    private final int pipelineDepth;
+    private final CommandHandler handler;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    // anahtar başına çalışan komut (baştaki) ve arkasında bekleyenler, geliş sırasıyla
+    private final Map<Long, ArrayDeque<KeyedTask>> keyQueues = new HashMap<>();
+
+    TextGateway(int port, int ioThreads, int workerThreads, int maxLineBytes, int pipelineDepth,
+                CommandHandler handler) throws IOException {
+        this.port = port;
+        this.maxLineBytes = maxLineBytes;
+        this.pipelineDepth = Math.max(1, pipelineDepth);
+        this.handler = handler;
+        this.loops = new EventLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop("GatewayIO-" + i);
+        }
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), r -> {
+            Thread t = new Thread(r, "GatewayWorker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    void start() throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (EventLoop loop : loops) {
+            Thread thread = new Thread(loop, loop.name);
+            thread.start();
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            System.out.println("New TCP client connected: " + channel.getRemoteAddress());
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            SocketChannel accepted = channel;
+            loop.execute(() -> loop.register(accepted));
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        final String name;
+        final Selector selector;
+        // başka thread'lerden gelen işler (yeni bağlantı, cevap, komut bitişi) loop thread'inde çalışır
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // loop'taki bütün bağlantılar okumayı bu buffer üzerinden yapar
+        final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        EventLoop(String name) throws IOException {
+            this.name = name;
+            this.selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                System.err.println("TCP client error: " + e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        handleKey(key);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error in leader text listener: " + e.getMessage());
+                }
+            }
+        }
+
+        private void handleKey(SelectionKey key) {
+            if (!key.isValid()) return;
+            if (key.channel() instanceof ServerSocketChannel) {
+                try {
+                    accept((ServerSocketChannel) key.channel());
+                } catch (IOException e) {
+                    System.err.println("Error in leader text listener: " + e.getMessage());
+                }
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isWritable()) connection.flush();
+                if (key.isValid() && key.isReadable()) connection.read();
+            } catch (IOException e) {
+                System.err.println("TCP client error: " + e.getMessage());
+                connection.close();
+            }
+        }
+    }
+
+    // lines/inFlight/barrier/output sadece loop thread'inde; slots ve pending bağlantı kilidi altında değişir
+    private final class Connection {
+        final EventLoop loop;
+        final SocketChannel channel;
+        SelectionKey key;
+        // yarım kalan satır; tam satırlar gelince boşaltılır
+        final ByteArrayOutputStream partial = new ByteArrayOutputStream(0);
+        // satır (binary'de frame) başına tek kopya (okuma buffer'ı paylaşılıyor); komut bu baytların üzerinde çözülür
+        final ArrayDeque<ByteBuffer> lines = new ArrayDeque<>();
+        // lines'taki byte'lar
+        long queuedBytes;
+        // protokol ilk okunan byte'tan belirlenir
+        boolean detected;
+        boolean binary;
+        // binary: uzunluk alanı iki okumaya bölünebilir; gövdesi gelmekte olan frame
+        int header;
+        int headerBytes;
+        ByteBuffer frame;
+        final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        // cevabı henüz tamamlanmamış komutlar, geliş sırasıyla; baştaki doğrudan sokete yazar
+        final ArrayDeque<Slot> slots = new ArrayDeque<>();
+        // loop'a verilmiş ama henüz sokete yazılmamış byte'lar
+        long pending;
+        int inFlight;
+        // baştaki MSET'in tamamlanması için gereken satır sayısı (başlık dahil); okuma bu kadar satıra izin verir
+        int awaitedLines;
+        // anahtarsız komut çalışıyor; bitene kadar yeni komut başlamaz
+        boolean barrier;
+        // istemci yazma tarafını kapattı; kuyruktaki komutlar cevaplanınca soket kapatılır
+        boolean eof;
+        volatile boolean closed;
+
+        Connection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            ByteBuffer buffer = loop.readBuffer;
+            buffer.clear();
+            int n = channel.read(buffer);
+            if (n < 0) {
+                eof = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                // readLine gibi sonu \n ile bitmeyen son satır da komuttur
+                if (partial.size() > 0) {
+                    enqueue(line(partial.toByteArray()));
+                    partial.reset();
+                }
+                dispatch();
+                return;
+            }
+            byte[] data = buffer.array();
+            int start = 0;
+            if (!detected && n > 0) {
+                detected = true;
+                binary = data[0] == BINARY_MAGIC;
+                if (binary) start = 1;
+            }
+            if (binary) {
+                readFrames(data, start, n);
+                return;
+            }
+            for (int i = start; i < n; i++) {
+                if (data[i] != '\n') continue;
+                if (partial.size() == 0) {
+                    enqueue(line(Arrays.copyOfRange(data, start, i)));
+                } else {
+                    partial.write(data, start, i - start);
+                    enqueue(line(partial.toByteArray()));
+                    partial.reset();
+                }
+                start = i + 1;
+            }
+            partial.write(data, start, n - start);
+            if (partial.size() > maxLineBytes) {
+                System.err.println("TCP client error: satır " + maxLineBytes + " byte sınırını aştı");
+                close();
+                return;
+            }
+            // tamamlanmayı bekleyen MSET bloğu kuyruğun tamamıdır (başlığı baştadır)
+            if (lines.size() < awaitedLines && queuedBytes + partial.size() > maxLineBytes) {
+                System.err.println("TCP client error: MSET bloğu " + maxLineBytes + " byte sınırını aştı");
+                close();
+                return;
+            }
+            if (!accepting(MAX_QUEUED_LINES, MAX_QUEUED_BYTES)) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            dispatch();
+        }
+
+        // frame'ler gövdeleri tamamlanınca kuyruğa girer; yarım frame bir sonraki okumada tamamlanır
+        private void readFrames(byte[] data, int pos, int n) {
+            while (pos < n) {
+                if (frame == null) {
+                    while (headerBytes < 4 && pos < n) {
+                        header = header << 8 | (data[pos++] & 0xFF);
+                        headerBytes++;
+                    }
+                    if (headerBytes < 4) break;
+                    headerBytes = 0;
+                    if (header < 1 || header > maxLineBytes) {
+                        System.err.println("TCP client error: geçersiz frame uzunluğu " + header);
+                        close();
+                        return;
+                    }
+                    frame = ByteBuffer.allocate(header);
+                }
+                int take = Math.min(frame.remaining(), n - pos);
+                frame.put(data, pos, take);
+                pos += take;
+                if (!frame.hasRemaining()) {
+                    frame.flip();
+                    enqueue(frame);
+                    frame = null;
+                }
+            }
+            if (!accepting(MAX_QUEUED_LINES, MAX_QUEUED_BYTES)) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            dispatch();
+        }
+
+        private void enqueue(ByteBuffer line) {
+            lines.add(line);
+            queuedBytes += line.remaining();
+        }
+
+        private ByteBuffer dequeue() {
+            ByteBuffer line = lines.poll();
+            queuedBytes -= line.remaining();
+            return line;
+        }
+
+        // Kuyruk satır ve byte sınırlarının altındaysa okuma sürer; baştaki MSET bloğu eksikse sınırlar
+        // uygulanmaz (blok okunmadan ilerleyemez), bloğun boyu read()'de maxLineBytes ile sınırlanır
+        private boolean accepting(int maxLines, long maxBytes) {
+            return (lines.size() < maxLines && queuedBytes < maxBytes) || lines.size() < awaitedLines;
+        }
+
+        // BufferedReader.readLine gibi satır sonundaki \r atılır
+        private ByteBuffer line(byte[] bytes) {
+            int length = bytes.length;
+            if (length > 0 && bytes[length - 1] == '\r') length--;
+            return ByteBuffer.wrap(bytes, 0, length);
+        }
+
+        // Kuyruktaki satırlar pipelineDepth'e kadar aynı anda çalıştırılır. Sırasız bir komut
+        // (SCAN, chat) öncekiler bitince tek başına çalışır, sonrakiler de onu bekler.
+        // MSET, başlığını izleyen satırların hepsi gelince tek komut olarak çalışır.
+        private void dispatch() {
+            while (!closed && !barrier && inFlight < pipelineDepth && !lines.isEmpty() && !outputBacklogged()) {
+                TextCommand command = binary ? new TextCommand().parseFrame(lines.peek())
+                        : new TextCommand().parse(lines.peek());
+                int entryLines = command.entryLines();
+                if (entryLines > MAX_ENTRY_LINES) {
+                    System.err.println("TCP client error: MSET " + MAX_ENTRY_LINES + " satır sınırını aştı");
+                    close();
+                    return;
+                }
+                if (lines.size() <= entryLines) {
+                    awaitedLines = entryLines + 1;
+                    if (eof && inFlight == 0) {
+                        System.err.println("TCP client error: MSET satırları tamamlanmadan bağlantı kapandı");
+                        close();
+                        return;
+                    }
+                    break;
+                }
+                boolean ordered = command.ordered();
+                if (!ordered) {
+                    if (inFlight > 0) break;
+                    barrier = true;
+                }
+                dequeue();
+                if (entryLines > 0) {
+                    List<ByteBuffer> entries = new ArrayList<>(entryLines);
+                    for (int i = 0; i < entryLines; i++) {
+                        entries.add(dequeue());
+                    }
+                    command.entries(entries);
+                    awaitedLines = 0;
+                }
+                inFlight++;
+                Slot slot = new Slot(this, command.type(), binary, ordered);
+                synchronized (this) {
+                    slots.add(slot);
+                }
+                submit(command.orderingKeys(), () -> {
+                    try {
+                        handler.handle(command, slot);
+                    } catch (RuntimeException e) {
+                        System.err.println("TCP client error: " + e.getMessage());
+                    } finally {
+                        complete(slot);
+                    }
+                });
+            }
+            boolean accepting = accepting(MAX_QUEUED_LINES / 2, MAX_QUEUED_BYTES / 2);
+            if (!closed && !eof && accepting && (key.interestOps() & SelectionKey.OP_READ) == 0) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+            closeWhenDone();
+        }
+
+        // Worker thread'inden: baştaki komutun cevabı sokete gider, sonrakilerinki sırası gelene kadar slot'ta
+        // birikir. Anahtarlı komut hiç beklemez (beklerse aynı id'li komutlar bütün bağlantılarda onun
+        // arkasında kalırdı); çıktıyı dispatch'in kabul sınırı tutar. Anahtarsız baştaki komut istemci okuyana
+        // kadar bekler, OUTPUT_STALL_MILLIS dolarsa bağlantı kapatılır ve worker serbest kalır.
+        void emit(Slot slot, ByteBuffer bytes) {
+            synchronized (this) {
+                long deadline = System.nanoTime() + OUTPUT_STALL_MILLIS * 1_000_000;
+                while (!closed && !slot.keyed && slot == slots.peek() && pending > MAX_PENDING_OUTPUT) {
+                    long remaining = (deadline - System.nanoTime()) / 1_000_000;
+                    if (remaining <= 0) {
+                        System.err.println("TCP client error: istemci " + OUTPUT_STALL_MILLIS
+                                + " ms cevap okumadı, bağlantı kapatılıyor");
+                        close();
+                        return;
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed) return;
+                if (slot == slots.peek()) {
+                    send(bytes);
+                } else {
+                    slot.buffered.add(bytes);
+                }
+            }
+        }
+
+        // Worker thread'inden: komut bitti. Baştan itibaren biten komutlar çıkarılır, yeni baştaki
+        // komutun biriken cevabı sokete verilir.
+        private void complete(Slot slot) {
+            synchronized (this) {
+                slot.done = true;
+                while (!slots.isEmpty() && slots.peek().done) {
+                    slots.poll();
+                    Slot head = slots.peek();
+                    if (head == null) break;
+                    for (ByteBuffer bytes : head.buffered) {
+                        send(bytes);
+                    }
+                    head.buffered.clear();
+                }
+                notifyAll();
+            }
+            loop.execute(() -> {
+                inFlight--;
+                barrier = false;
+                dispatch();
+            });
+        }
+
+        // bağlantı kilidi altında; loop kuyruğu FIFO olduğu için cevaplar bu sırayla yazılır
+        private void send(ByteBuffer bytes) {
+            pending += bytes.remaining();
+            loop.execute(() -> {
+                if (closed) return;
+                output.add(bytes);
+                try {
+                    flush();
+                } catch (IOException e) {
+                    System.err.println("TCP client error: " + e.getMessage());
+                    close();
+                }
+            });
+        }
+
+        void flush() throws IOException {
+            long written = 0;
+            while (!output.isEmpty()) {
+                ByteBuffer head = output.peek();
+                written += channel.write(head);
+                if (head.hasRemaining()) break;
+                output.poll();
+            }
+            boolean drained = false;
+            if (written > 0) {
+                synchronized (this) {
+                    drained = pending > MAX_PENDING_OUTPUT && pending - written <= MAX_PENDING_OUTPUT;
+                    pending -= written;
+                    if (pending <= MAX_PENDING_OUTPUT) notifyAll();
+                }
+            }
+            if (!key.isValid()) return;
+            int ops = key.interestOps();
+            key.interestOps(output.isEmpty() ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE);
+            // çıktı birikimi yüzünden durmuş komut kabulü devam eder
+            if (drained) {
+                dispatch();
+            } else {
+                closeWhenDone();
+            }
+        }
+
+        private synchronized boolean outputBacklogged() {
+            return pending > MAX_PENDING_OUTPUT;
+        }
+
+        private void closeWhenDone() {
+            if (eof && inFlight == 0 && lines.isEmpty() && output.isEmpty()) close();
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            key.cancel();
+            closeQuietly(channel);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    // Tek komutun cevabı; komut çalışırken Reply olarak verilir
+    private static final class Slot implements Reply {
+        final Connection connection;
+        final int commandType;
+        final boolean binary;
+        // anahtar kuyruğunu tuttuğu için soketi beklemez
+        final boolean keyed;
+        final ArrayDeque<ByteBuffer> buffered = new ArrayDeque<>();
+        boolean done;
+
+        Slot(Connection connection, int commandType, boolean binary, boolean keyed) {
+            this.connection = connection;
+            this.commandType = commandType;
+            this.binary = binary;
+            this.keyed = keyed;
+        }
+
+        @Override
+        public void stored(int id) {
+            if (binary) {
+                frame(STATUS_OK, id, null);
+            } else {
+                line(commandType == TextCommand.MSET ? "OK " + id : "OK", null);
+            }
+        }
+
+        @Override
+        public void value(int id, ByteString data) {
+            if (binary) {
+                frame(STATUS_OK, id, data);
+            } else {
+                line(commandType == TextCommand.GET ? "OK " : "OK " + id + " ", data);
+            }
+        }
+
+        @Override
+        public void notFound(int id) {
+            if (binary) {
+                frame(STATUS_NOT_FOUND, id, null);
+            } else if (commandType == TextCommand.SET) {
+                line("NOT_FOUND (Yazilacak uygun dugum bulunamadi)", null);
+            } else {
+                line(commandType == TextCommand.GET ? "NOT_FOUND" : "NOT_FOUND " + id, null);
+            }
+        }
+
+        @Override
+        public void error(String message) {
+            if (binary) {
+                frame(STATUS_ERROR, 0, ByteString.copyFromUtf8(message));
+            } else {
+                line("ERROR " + message, null);
+            }
+        }
+
+        @Override
+        public void end(int count) {
+            if (binary) {
+                frame(STATUS_END, count, null);
+            } else {
+                line("END " + count, null);
+            }
+        }
+
+        @Override
+        public void broadcastSent() {
+            if (binary) {
+                frame(STATUS_OK, 0, null);
+            } else {
+                line("BROADCAST_SENT", null);
+            }
+        }
+
+        // mesaj baytları olduğu gibi yazılır
+        private void line(String text, ByteString data) {
+            if (connection.closed) return;
+            byte[] head = text.getBytes(StandardCharsets.UTF_8);
+            int dataSize = data == null ? 0 : data.size();
+            ByteBuffer bytes = ByteBuffer.allocate(head.length + dataSize + LINE_SEPARATOR.length);
+            bytes.put(head);
+            if (data != null) data.copyTo(bytes);
+            bytes.put(LINE_SEPARATOR).flip();
+            connection.emit(this, bytes);
+        }
+
+        private void frame(byte status, int id, ByteString data) {
+            if (connection.closed) return;
+            int dataSize = data == null ? 0 : data.size();
+            ByteBuffer bytes = ByteBuffer.allocate(4 + 5 + dataSize);
+            bytes.putInt(5 + dataSize).put(status).putInt(id);
+            if (data != null) data.copyTo(bytes);
+            bytes.flip();
+            connection.emit(this, bytes);
+        }
+    }
+
+    // Aynı anahtarlı komutlar geliş sırasıyla ve tek tek, farklı anahtarlılar worker havuzunda paralel çalışır.
+    // Çok anahtarlı komut bütün kuyruklarına tek kilitte girer ve hepsinin başına gelince çalışır; kuyruklar
+    // aynı geliş sırasını paylaştığı için komutlar birbirini kilitleyemez.
+    private void submit(long[] keys, Runnable task) {
+        if (keys.length == 0) {
+            workers.execute(task);
+            return;
+        }
+        KeyedTask keyed = new KeyedTask(keys, task);
+        synchronized (keyQueues) {
+            for (long key : keys) {
+                ArrayDeque<KeyedTask> queue = keyQueues.computeIfAbsent(key, k -> new ArrayDeque<>());
+                queue.add(keyed);
+                if (queue.size() > 1) keyed.blocked++;
+            }
+            if (keyed.blocked > 0) return;
+        }
+        workers.execute(() -> runKeyed(keyed));
+    }
+
+    private void runKeyed(KeyedTask keyed) {
+        try {
+            keyed.task.run();
+        } finally {
+            List<KeyedTask> ready = new ArrayList<>();
+            synchronized (keyQueues) {
+                for (long key : keyed.keys) {
+                    ArrayDeque<KeyedTask> queue = keyQueues.get(key);
+                    queue.poll();
+                    KeyedTask next = queue.peek();
+                    if (next == null) {
+                        keyQueues.remove(key);
+                    } else if (--next.blocked == 0) {
+                        ready.add(next);
+                    }
+                }
+            }
+            for (KeyedTask next : ready) {
+                workers.execute(() -> runKeyed(next));
+            }
+        }
+    }
+
+    private static final class KeyedTask {
+        // sıralı ve tekrarsız
+        final long[] keys;
+        final Runnable task;
+        // başında olmadığı kuyruk sayısı; keyQueues kilidi altında, 0 olunca çalışır
+        int blocked;
+
+        KeyedTask(long[] keys, Runnable task) {
+            this.keys = keys;
+            this.task = task;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
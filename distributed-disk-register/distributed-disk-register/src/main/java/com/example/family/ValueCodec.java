@@ -0,0 +1,321 @@
+package com.example.family;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Motorların diske yazdığı payload'ı şeffaf olarak sıkıştırır (COMPRESSION=deflate).
+// Saklanan biçim: 0xFF ile başlamayan değer ham payload'dır; 0xFF ile başlayanlarda ikinci byte türdür:
+//   [0xFF][0][payload]                      -> 0xFF ile başlayan ham payload (kaçış)
+//   [0xFF][1][ham uzunluk:int][zlib akışı]  -> deflate; sözlükle sıkıştırıldıysa zlib başlığında adler'i var
+// Okuma her zaman çözer; COMPRESSION kapatılsa da önceden sıkıştırılmış kayıtlar okunur.
+final class ValueCodec {
+
+    private static final byte MARKER = (byte) 0xFF;
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+    private static final int DEFLATE_HEADER = 2 + Integer.BYTES;
+    private static final String DICT_PREFIX = "compression-";
+    private static final String DICT_SUFFIX = ".dict";
+    // sözlük çıkarılırken sayılan alt dizgi uzunluğu
+    private static final int SHINGLE = 8;
+
+    private final Path dir;
+    private final boolean enabled;
+    private final int minBytes;
+    private final int level;
+
+    // Deflater/Inflater native bellek tutar; her thread kendi örneğini yeniden kullanır
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    // küçük mesajlar tek başına iyi sıkışmaz; ortak kalıpları içeren hazır sözlük verilir
+    private final boolean trainDictionary;
+    private final int dictionaryBytes;
+    private final int sampleMaxBytes;
+    private final int sampleTargetBytes;
+    private final List<byte[]> samples = new ArrayList<>();
+    private int sampledBytes;
+    private volatile byte[] dictionary;
+    // adler32 -> sözlük; eski sözlükle yazılmış kayıtlar da çözülebilsin diye hepsi tutulur
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong compressedRecords = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong decodedRecords = new AtomicLong();
+
+    ValueCodec(Path dir, StorageConfig config) {
+        this.dir = dir;
+        this.enabled = "deflate".equalsIgnoreCase(config.getString("COMPRESSION", "none"));
+        this.minBytes = Math.max(DEFLATE_HEADER + 1, config.getInt("COMPRESSION_MIN_BYTES", 128));
+        this.level = config.getInt("COMPRESSION_LEVEL", Deflater.BEST_SPEED);
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+        this.trainDictionary = enabled && config.getBoolean("COMPRESSION_DICT", false);
+        // deflate penceresi 32KB; daha büyük sözlüğün başı kullanılamaz
+        this.dictionaryBytes = Math.min(32 * 1024, config.getInt("COMPRESSION_DICT_BYTES", 16 * 1024));
+        this.sampleMaxBytes = config.getInt("COMPRESSION_DICT_SAMPLE_MAX_BYTES", 1024);
+        this.sampleTargetBytes = config.getInt("COMPRESSION_DICT_SAMPLE_BYTES", 256 * 1024);
+        loadDictionaries();
+    }
+
+    // Dönen buffer payload'ın kendisi olabilir (ham saklanıyorsa); payload'ın position'ı değişmez
+    ByteBuffer encode(ByteBuffer payload) {
+        int length = payload.remaining();
+        if (enabled && length >= minBytes) {
+            long start = System.nanoTime();
+            ByteBuffer compressed = deflate(payload, length);
+            encodeNanos.addAndGet(System.nanoTime() - start);
+            rawBytes.addAndGet(length);
+            storedBytes.addAndGet(compressed != null ? compressed.remaining() : length);
+            if (compressed != null) {
+                compressedRecords.incrementAndGet();
+                return compressed;
+            }
+        }
+        if (length > 0 && payload.get(payload.position()) == MARKER) {
+            ByteBuffer escaped = ByteBuffer.allocate(2 + length);
+            escaped.put(MARKER).put(RAW).put(payload.duplicate());
+            escaped.flip();
+            return escaped;
+        }
+        return payload;
+    }
+
+    byte[] decode(byte[] stored) throws IOException {
+        if (stored.length == 0 || stored[0] != MARKER) return stored;
+        if (stored.length < 2) throw new IOException("sıkıştırılmış kayıt başlığı eksik");
+        if (stored[1] == RAW) return Arrays.copyOfRange(stored, 2, stored.length);
+        if (stored[1] != DEFLATE || stored.length < DEFLATE_HEADER) {
+            throw new IOException("bilinmeyen sıkıştırma türü " + stored[1]);
+        }
+
+        long start = System.nanoTime();
+        int length = ByteBuffer.wrap(stored, 2, Integer.BYTES).getInt();
+        if (length < 0) throw new IOException("sıkıştırılmış kayıt uzunluğu hatalı");
+        byte[] payload = new byte[length];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(stored, DEFLATE_HEADER, stored.length - DEFLATE_HEADER);
+        try {
+            int n = 0;
+            while (!inflater.finished()) {
+                int read = inflater.inflate(payload, n, length - n);
+                n += read;
+                if (read > 0) continue;
+                if (inflater.needsDictionary()) {
+                    byte[] dict = dictionaries.get(inflater.getAdler());
+                    if (dict == null) throw new IOException("sıkıştırma sözlüğü bulunamadı");
+                    inflater.setDictionary(dict);
+                } else if (inflater.needsInput() || n == length) {
+                    break;
+                }
+            }
+            if (!inflater.finished() || n != length) throw new IOException("sıkıştırılmış kayıt eksik");
+        } catch (DataFormatException e) {
+            throw new IOException("sıkıştırılmış kayıt bozuk: " + e.getMessage());
+        }
+        decodeNanos.addAndGet(System.nanoTime() - start);
+        decodedRecords.incrementAndGet();
+        return payload;
+    }
+
+    void stats(Map<String, Long> stats) {
+        long raw = rawBytes.get();
+        long stored = storedBytes.get();
+        stats.put("compression.rawBytes", raw);
+        stats.put("compression.storedBytes", stored);
+        // saklanan / ham, yüzde olarak (100 = kazanç yok)
+        stats.put("compression.ratioPercent", raw == 0 ? 100 : stored * 100 / raw);
+        stats.put("compression.records", compressedRecords.get());
+        stats.put("compression.encodeMicros", encodeNanos.get() / 1000);
+        stats.put("compression.decodeMicros", decodeNanos.get() / 1000);
+        stats.put("compression.decodedRecords", decodedRecords.get());
+        stats.put("compression.dictBytes", dictionary == null ? 0L : (long) dictionary.length);
+    }
+
+    // sıkıştırma kazanç sağlamazsa null
+    private ByteBuffer deflate(ByteBuffer payload, int length) {
+        byte[] dict = dictionary;
+        if (dict == null && trainDictionary && length <= sampleMaxBytes) {
+            sample(payload, length);
+        }
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dict != null) deflater.setDictionary(dict);
+        deflater.setInput(payload.duplicate());
+        deflater.finish();
+        // ham boyuttan büyük çıktı işe yaramaz; buffer dolarsa vazgeçilir
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.put(MARKER).put(DEFLATE).putInt(length);
+        while (!deflater.finished() && out.hasRemaining()) {
+            deflater.deflate(out);
+        }
+        if (!deflater.finished()) return null;
+        out.flip();
+        return out;
+    }
+
+    private void sample(ByteBuffer payload, int length) {
+        byte[] copy = new byte[length];
+        payload.duplicate().get(copy);
+        List<byte[]> ready = null;
+        synchronized (samples) {
+            if (dictionary != null || sampledBytes >= sampleTargetBytes) return;
+            samples.add(copy);
+            sampledBytes += length;
+            if (sampledBytes >= sampleTargetBytes) {
+                ready = new ArrayList<>(samples);
+                samples.clear();
+            }
+        }
+        if (ready != null) {
+            installDictionary(train(ready, dictionaryBytes));
+        }
+    }
+
+    // Örneklerde sık geçen 8 byte'lık parçaları en çok içeren mesajlar seçilir. Birbirini tekrar eden
+    // mesajlar atlanır; en faydalılar sona konur (deflate yakın mesafeleri daha ucuz kodlar).
+    private static byte[] train(List<byte[]> samples, int maxBytes) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            for (long shingle : shingles(sample)) {
+                counts.merge(shingle, 1, Integer::sum);
+            }
+        }
+
+        List<double[]> scored = new ArrayList<>();
+        for (int i = 0; i < samples.size(); i++) {
+            long score = 0;
+            for (long shingle : shingles(samples.get(i))) {
+                int count = counts.get(shingle);
+                if (count > 1) score += count;
+            }
+            if (score > 0) scored.add(new double[] {(double) score / samples.get(i).length, i});
+        }
+        scored.sort((a, b) -> Double.compare(b[0], a[0]));
+
+        List<byte[]> chosen = new ArrayList<>();
+        Set<Long> covered = new HashSet<>();
+        int total = 0;
+        for (double[] entry : scored) {
+            byte[] sample = samples.get((int) entry[1]);
+            if (total + sample.length > maxBytes) continue;
+            long[] own = shingles(sample);
+            int fresh = 0;
+            for (long shingle : own) {
+                if (!covered.contains(shingle)) fresh++;
+            }
+            if (fresh * 2 < own.length) continue;
+            for (long shingle : own) {
+                covered.add(shingle);
+            }
+            chosen.add(sample);
+            total += sample.length;
+        }
+
+        byte[] dict = new byte[total];
+        int position = 0;
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            byte[] sample = chosen.get(i);
+            System.arraycopy(sample, 0, dict, position, sample.length);
+            position += sample.length;
+        }
+        return dict;
+    }
+
+    private static long[] shingles(byte[] data) {
+        if (data.length < SHINGLE) return new long[0];
+        long[] result = new long[data.length - SHINGLE + 1];
+        for (int i = 0; i < result.length; i++) {
+            long value = 0;
+            for (int j = 0; j < SHINGLE; j++) {
+                value = (value << 8) | (data[i + j] & 0xff);
+            }
+            result[i] = value;
+        }
+        return result;
+    }
+
+    // sözlük kayıtları çözmek için gerekli; kullanılmadan önce diske yazılır
+    private void installDictionary(byte[] dict) {
+        if (dict.length == 0) {
+            System.err.println("Sıkıştırma sözlüğü çıkarılamadı (örnekler ortak kalıp içermiyor)");
+            return;
+        }
+        Adler32 adler = new Adler32();
+        adler.update(dict);
+        int id = (int) adler.getValue();
+        Path file = dir.resolve(String.format("%s%08x%s", DICT_PREFIX, id, DICT_SUFFIX));
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        // DURABLE modda kayıtlar hemen fsync edilir; çökmeden sonra referans verdikleri sözlük de diskte
+        // olmalı, bu yüzden içerik rename'den önce, dizin girdisi sözlük kullanılmadan önce kalıcı yapılır
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer content = ByteBuffer.wrap(dict);
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileSync.directory(dir);
+        } catch (IOException e) {
+            System.err.println("Sıkıştırma sözlüğü yazılamadı: " + e.getMessage());
+            return;
+        }
+        dictionaries.put(id, dict);
+        dictionary = dict;
+        System.out.printf("Sıkıştırma sözlüğü oluşturuldu: %s (%d byte)%n", file.getFileName(), dict.length);
+    }
+
+    // Tüm sözlükler okuma için yüklenir; yeni kayıtlarda en son yazılanı kullanılır
+    private void loadDictionaries() {
+        if (!Files.isDirectory(dir)) return;
+        FileTime newest = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, DICT_PREFIX + "*" + DICT_SUFFIX)) {
+            for (Path file : stream) {
+                byte[] dict = Files.readAllBytes(file);
+                Adler32 adler = new Adler32();
+                adler.update(dict);
+                String name = file.getFileName().toString();
+                String expected = name.substring(DICT_PREFIX.length(), name.length() - DICT_SUFFIX.length());
+                if (!String.format("%08x", (int) adler.getValue()).equals(expected)) {
+                    System.err.println("Sıkıştırma sözlüğü bozuk, yok sayılıyor: " + file);
+                    continue;
+                }
+                dictionaries.put((int) adler.getValue(), dict);
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (trainDictionary && (newest == null || modified.compareTo(newest) > 0)) {
+                    newest = modified;
+                    dictionary = dict;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Sıkıştırma sözlükleri okunamadı: " + e.getMessage());
+        }
+    }
+}